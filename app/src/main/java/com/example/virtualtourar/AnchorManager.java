@@ -0,0 +1,861 @@
+package com.example.virtualtourar;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.virtualtourar.data.EggExecutors;
+import com.example.virtualtourar.data.EggIndexEntry;
+import com.example.virtualtourar.data.EggRepository;
+import com.example.virtualtourar.data.EggTable;
+import com.example.virtualtourar.data.spatial.EggSpatialIndex;
+import com.example.virtualtourar.data.spatial.GeoHash;
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Earth;
+import com.google.ar.core.GeospatialPose;
+import com.google.ar.core.ResolveAnchorOnTerrainFuture;
+import com.google.ar.core.ResolveCloudAnchorFuture;
+import com.google.ar.core.Session;
+import com.google.ar.core.TrackingState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Owns every egg anchor: Cloud resolve, GEO / terrain placement, drift relocalization and
+ * catalog reconciliation, as a per-egg state machine
+ *
+ *   IDLE ─▶ RESOLVING_CLOUD ─▶ PLACED_CLOUD
+ *     │            └─(timeout / error / expired: GEO fallback)─┐
+ *     ├─▶ RESOLVING_TERRAIN ─▶ PLACED_GEO ◀────────────────────┘
+ *     └─▶ PLACED_GEO (exact altitude)
+ *   PLACED_* ─(off target)─▶ DRIFTED ─▶ placed again like IDLE
+ *   any ─(removed / moved in the catalog)─▶ EVICTED
+ *
+ * A GEO placeholder keeps its Cloud resolve running; success swaps it for the Cloud anchor.
+ *
+ * At most {@code budget} eggs hold anchors (placed or resolving): ARCore's per-frame cost grows
+ * with the anchor count. When a nearer egg is waiting for room, the farthest anchor not viewed
+ * lately is released (least recently viewed breaks ties); it is acquired again like any other egg
+ * once it is the nearer one.
+ *
+ * Cloud and terrain resolves go through the async future APIs, at most a few of each in flight.
+ * Candidates are started nearest first (eggs in front of the camera count as nearer), so nearby
+ * eggs never queue behind distant ones, and resolves for eggs the user walked away from are
+ * cancelled.
+ *
+ * All of it runs on a dedicated worker thread, so it never queues behind (or runs on) a shared
+ * pool. {@link #pause()} and {@link #close()} wait for that thread to finish what it is doing, so
+ * no ARCore call races session.pause() / close(). The GL thread only hands over the latest camera inputs
+ * ({@link #onFrame}, no work, no locks) and reads {@link #snapshot()}: an immutable draw list
+ * republished whenever an anchor appears, moves or goes away. Frame time no longer depends on
+ * how many eggs are resolving.
+ */
+final class AnchorManager {
+    private static final String TAG = "AnchorManager";
+
+    enum State { IDLE, RESOLVING_CLOUD, RESOLVING_TERRAIN, PLACED_GEO, PLACED_CLOUD, DRIFTED, EVICTED }
+
+    // Per-tick query radii (served by the spatial index, not a full scan)
+    private static final double GEO_PLACE_RADIUS_M     = 40.0;
+    private static final double CLOUD_RESOLVE_RADIUS_M = 100.0;
+
+    /** Cloud still running after this: show the GEO placeholder meanwhile. */
+    private static final long CLOUD_RESOLVE_FALLBACK_MS = 10_000L;
+    /** Between placement attempts, and between Cloud resolves after a failure. */
+    private static final long ANCHOR_RETRY_MS = 30_000L;
+
+    // Re-localize (STRicter)
+    private static final double RELOCALIZE_IF_ERROR_M = 1.0;
+    private static final long   RELOCALIZE_BACKOFF_MS = 20_000L;
+    /** getGeospatialPose per anchor isn't free; the drift scan doesn't need frame rate. */
+    private static final long   DRIFT_CHECK_MS = 500L;
+    /** pause() runs on the main thread: bounded, one tick is far shorter than this. */
+    private static final long   PAUSE_WAIT_MS = 500L;
+
+    // Anchor budget
+    static final int DEFAULT_BUDGET = 30;
+    /** Drawn on screen this recently: never released to make room. */
+    private static final long   RECENT_VIEW_MS = 5_000L;
+    /** A waiting egg must be this much nearer than the anchor it displaces (no ping-pong). */
+    private static final double DISPLACE_MARGIN_M = 10.0;
+
+    // Resolve scheduling
+    private static final int    MAX_CLOUD_IN_FLIGHT   = 3;
+    private static final int    MAX_TERRAIN_IN_FLIGHT = 2;
+    /** Beyond these (a margin past the start radii) an in-flight resolve is cancelled. */
+    private static final double CLOUD_CANCEL_RADIUS_M   = 150.0;
+    private static final double TERRAIN_CANCEL_RADIUS_M = 80.0;
+    /** In front of the camera: ranked as if this fraction of the distance away. */
+    private static final double IN_VIEW_WEIGHT = 0.5;
+    private static final double HALF_FOV_DEG   = 30.0;
+    /** Rank of eggs without coordinates (Cloud only): behind everything in range. */
+    private static final double UNLOCATED_RANK_M = CLOUD_RESOLVE_RADIUS_M;
+
+    /** Called on the main thread. */
+    interface Listener {
+        /** At least one Cloud resolve started (fires per tick that started any). */
+        void onCloudResolveStarted();
+    }
+
+    /** Immutable draw list for the GL thread: placed anchors paired with rows of {@link #table}. */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(EggTable.EMPTY, new Slot[0], new int[0],
+                Collections.emptyMap(), 0, 0, 0);
+
+        final EggTable table;
+        final int count;
+        /** Eggs holding an anchor, placed or still resolving (≤ budget). */
+        final int live;
+        /** Anchors released for the budget / released eggs anchored again (since creation). */
+        final long evictions, reacquired;
+        private final Anchor[] anchors;
+        private final Slot[] slots;
+        private final int[] rows;
+        private final Map<String, State> states;
+
+        Snapshot(EggTable table, Slot[] slots, int[] rows, Map<String, State> states,
+                 int live, long evictions, long reacquired) {
+            this.table = table;
+            this.count = slots.length;
+            this.slots = slots;
+            this.anchors = new Anchor[slots.length];
+            for (int i = 0; i < slots.length; i++) anchors[i] = slots[i].anchor;
+            this.rows = rows;
+            this.states = states;
+            this.live = live;
+            this.evictions = evictions;
+            this.reacquired = reacquired;
+        }
+
+        Anchor anchor(int i) { return anchors[i]; }
+        int row(int i) { return rows[i]; }
+
+        /** GL thread: anchor {@code i} was drawn on screen this frame. */
+        void markViewed(int i, long now) { slots[i].viewedAt = now; }
+
+        State stateOf(@Nullable String eggId) {
+            State s = eggId != null ? states.get(eggId) : null;
+            return s != null ? s : State.IDLE;
+        }
+    }
+
+    /** Worker-confined bookkeeping for one egg. */
+    private static final class Slot {
+        final String id;
+        State state = State.IDLE;
+        @Nullable Anchor anchor;          // what is drawn
+        @Nullable ResolveCloudAnchorFuture cloud;       // Cloud resolve in flight
+        @Nullable ResolveAnchorOnTerrainFuture terrain; // terrain resolve in flight
+        int cloudSeq, terrainSeq;                       // stale callbacks carry an older value
+        long cloudStartedAt, cloudFailedAt, placeAttemptAt, relocAttemptAt;
+        boolean geoFallback;              // Cloud egg may show a GEO placeholder
+        volatile long viewedAt;           // GL thread writes (markViewed)
+        double distM;                     // budget scratch
+
+        Slot(String id) { this.id = id; }
+    }
+
+    private final HandlerThread thread = new HandlerThread("anchor-worker", Process.THREAD_PRIORITY_DEFAULT);
+    private final Executor worker;
+    private final AtomicBoolean tickQueued = new AtomicBoolean();
+    private final Runnable tick = this::tick;
+    private final Listener listener;
+    private final int budget;
+
+    // Latest inputs (GL thread writes, worker reads)
+    private volatile Session session;
+    private volatile Earth earth;
+    @Nullable private volatile GeospatialActivity.PoseLite cam;
+    @Nullable private volatile Location fix;
+    private volatile boolean placementAllowed;
+    private volatile boolean online = true;
+    private volatile double lastGoodYawDeg = Double.NaN;
+    private volatile boolean paused;
+    private volatile boolean closed;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    // Worker-confined
+    private final Map<String, Slot> slots = new HashMap<>();
+    private EggSpatialIndex index = EggSpatialIndex.EMPTY;
+    private final EggTable.Rows geoRows = new EggTable.Rows();
+    private final EggTable.Rows cloudRows = new EggTable.Rows();
+    private long lastDriftCheckAt;
+    /** Eggs holding an anchor (see {@link Snapshot#live}); resolves in flight. Kept by {@link #recount}. */
+    private int live, cloudInFlight, terrainInFlight;
+    /** Candidate rows packed as (rank float bits, row), see {@link #rank}. */
+    private long[] ranked = new long[64];
+    /** Nearest egg that found no room this tick, +∞ if none. */
+    private double starvedNearestM = Double.POSITIVE_INFINITY;
+    private final Map<String, Long> evictedAt = new HashMap<>();
+    private long evictions, reacquired;
+    private final List<Slot> budgetScratch = new ArrayList<>();
+
+    /** @param budget most eggs anchored at once ({@link #DEFAULT_BUDGET}) */
+    AnchorManager(int budget, @NonNull Listener listener) {
+        this.budget = Math.max(1, budget);
+        this.listener = listener;
+        thread.start();
+        final Handler handler = new Handler(thread.getLooper());
+        this.worker = handler::post;
+    }
+
+    int budget() { return budget; }
+
+    // -------------------- GL thread --------------------
+
+    /**
+     * Latest camera state; schedules a tick unless one is already queued.
+     *
+     * @param fix              last location fix, ranks Cloud resolves until {@code cam} is known
+     * @param placementAllowed localization is good enough to create GEO anchors
+     * @param lastGoodYawDeg   last heading with acceptable accuracy, NaN if none
+     */
+    void onFrame(@NonNull Session session, @Nullable Earth earth, @Nullable GeospatialActivity.PoseLite cam,
+                 @Nullable Location fix, boolean placementAllowed, boolean online, double lastGoodYawDeg) {
+        this.session = session;
+        this.earth = earth;
+        this.cam = cam;
+        this.fix = fix;
+        this.placementAllowed = placementAllowed;
+        this.online = online;
+        this.lastGoodYawDeg = lastGoodYawDeg;
+        if (usable() && tickQueued.compareAndSet(false, true)) worker.execute(tick);
+    }
+
+    /** Current draw list; never null, never mutated. */
+    Snapshot snapshot() { return snapshot; }
+
+    // -------------------- any thread --------------------
+
+    /** New catalog: re-pair anchors with its rows; eggs in {@code evict} lose their anchors. */
+    void onCatalog(@NonNull EggSpatialIndex newIndex, @NonNull Collection<String> evict) {
+        final List<String> ids = new ArrayList<>(evict);
+        worker.execute(() -> {
+            index = newIndex;
+            for (String id : ids) { evict(id); evictedAt.remove(id); }
+            publish();
+        });
+    }
+
+    /**
+     * Call before session.pause(): stops starting ARCore work and waits (briefly) for the worker
+     * to finish the tick in progress. Anchors stay; {@link #resume()} picks up where it left off.
+     */
+    void pause() {
+        paused = true;
+        awaitWorker(PAUSE_WAIT_MS);
+    }
+
+    /** Call after session.resume(). */
+    void resume() {
+        paused = false;
+    }
+
+    /**
+     * Session is going away: detach everything and stop the worker. session.close() must wait on
+     * the returned latch, so nothing touches the session after it is closed.
+     */
+    CountDownLatch close() {
+        closed = true;
+        final CountDownLatch done = new CountDownLatch(1);
+        worker.execute(() -> {
+            try {
+                for (Slot s : slots.values()) detachAll(s);
+                slots.clear();
+                snapshot = Snapshot.EMPTY;
+            } finally {
+                done.countDown();
+                thread.quitSafely();
+            }
+        });
+        return done;
+    }
+
+    /** Waits until everything queued on the worker so far has run (or the timeout passes). */
+    private void awaitWorker(long timeoutMs) {
+        if (Thread.currentThread() == thread) return;
+        final CountDownLatch l = new CountDownLatch(1);
+        worker.execute(l::countDown);
+        try {
+            if (!l.await(timeoutMs, TimeUnit.MILLISECONDS)) Log.w(TAG, "Anchor worker still busy after " + timeoutMs + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Session may be used: not paused, not closed. Checked before every ARCore call. */
+    private boolean usable() {
+        return !paused && !closed;
+    }
+
+    // -------------------- worker --------------------
+
+    private void tick() {
+        tickQueued.set(false);
+        final Session session = this.session;
+        if (!usable() || session == null || index.size() == 0) return;
+        final Earth earth = this.earth;
+        final GeospatialActivity.PoseLite cam = this.cam;
+        final Location fix = this.fix;
+        final long now = System.currentTimeMillis();
+
+        boolean changed = false;
+        try {
+            recount();
+            changed |= cancelWalkedAway(cam);
+            if (online) scheduleCloud(session, cam, fix, now);
+            checkCloudFallback(now);
+            if (earth != null && cam != null && placementAllowed) changed |= placeGeo(earth, cam, now);
+            changed |= enforceBudget(earth, cam, now);
+            if (earth != null && usable() && now - lastDriftCheckAt >= DRIFT_CHECK_MS) {
+                lastDriftCheckAt = now;
+                changed |= checkDrift(earth, now);
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Anchor tick failed", t);
+        }
+        if (changed) publish();
+    }
+
+    // ---------- scheduling ----------
+
+    /**
+     * Fills {@link #ranked} with {@code rows}, best first: nearest, eggs in front of the camera
+     * counted at {@link #IN_VIEW_WEIGHT} of their distance, unlocated eggs last. Returns the count.
+     */
+    private int rank(EggTable table, EggTable.Rows rows, GeospatialActivity.PoseLite cam) {
+        return rank(table, rows, cam.lat, cam.lng, cam);
+    }
+
+    /** Same, from (lat,lng); the view weighting only applies with a camera heading. */
+    private int rank(EggTable table, EggTable.Rows rows, double lat, double lng,
+                     @Nullable GeospatialActivity.PoseLite cam) {
+        final int n = rows.size();
+        if (ranked.length < n) ranked = new long[Math.max(n, ranked.length * 2)];
+        final boolean headingOk = cam != null && !Double.isNaN(cam.heading)
+                && cam.headingAcc <= GeospatialActivity.HEADING_MAX_ACC_DEG;
+        for (int i = 0; i < n; i++) {
+            final int row = rows.get(i);
+            double key = UNLOCATED_RANK_M;
+            if (table.has(row, EggTable.FLAG_HAS_GEO)) {
+                key = GeoHash.distanceMeters(lat, lng, table.lat[row], table.lng[row]);
+                if (headingOk && inView(cam, table.lat[row], table.lng[row])) key *= IN_VIEW_WEIGHT;
+            }
+            // Non-negative float bits order like the floats: sort by key, then row.
+            ranked[i] = ((long) Float.floatToIntBits((float) key) << 32) | row;
+        }
+        Arrays.sort(ranked, 0, n);
+        return n;
+    }
+
+    private static int rankedRow(long v) { return (int) v; }
+
+    /** Bearing from the camera to the point lies within the horizontal field of view. */
+    private static boolean inView(GeospatialActivity.PoseLite cam, double lat, double lng) {
+        final double dy = lat - cam.lat;
+        final double dx = (lng - cam.lng) * Math.cos(Math.toRadians(cam.lat));
+        final double bearing = Math.toDegrees(Math.atan2(dx, dy));
+        final double off = Math.abs(((bearing - cam.heading) % 360 + 540) % 360 - 180);
+        return off <= HALF_FOV_DEG;
+    }
+
+    /**
+     * Cancels resolves for eggs the user has walked away from. They cost nothing against the
+     * retry gates and start again (at their new priority) when the egg is back in range.
+     */
+    private boolean cancelWalkedAway(@Nullable GeospatialActivity.PoseLite cam) {
+        if (cam == null) return false;
+        final EggTable table = index.table();
+        boolean cancelled = false;
+        for (Slot s : slots.values()) {
+            if (s.cloud == null && s.terrain == null) continue;
+            if (!usable()) break;
+            final int row = table.rowOf(s.id);
+            if (row < 0 || !table.has(row, EggTable.FLAG_HAS_GEO)) continue;
+            final double d = GeoHash.distanceMeters(cam.lat, cam.lng, table.lat[row], table.lng[row]);
+            if (s.cloud != null && d > CLOUD_CANCEL_RADIUS_M) {
+                s.cloud.cancel();
+                s.cloud = null;
+                if (s.anchor == null && s.terrain == null) s.state = State.IDLE;
+                cancelled = true;
+                Log.d(TAG, String.format(java.util.Locale.US, "Cancelled Cloud resolve for %s (%.0fm away)", s.id, d));
+            }
+            if (s.terrain != null && d > TERRAIN_CANCEL_RADIUS_M) {
+                s.terrain.cancel();
+                s.terrain = null;
+                s.placeAttemptAt = 0;
+                if (s.anchor == null) s.state = s.cloud != null ? State.RESOLVING_CLOUD : State.IDLE;
+                cancelled = true;
+                Log.d(TAG, String.format(java.util.Locale.US, "Cancelled terrain resolve for %s (%.0fm away)", s.id, d));
+            }
+        }
+        if (cancelled) recount();
+        return cancelled;
+    }
+
+    // ---------- CLOUD ----------
+    private void scheduleCloud(Session session, @Nullable GeospatialActivity.PoseLite cam,
+                               @Nullable Location fix, long now) {
+        if (cloudInFlight >= MAX_CLOUD_IN_FLIGHT) return;
+        final EggTable table = index.table();
+
+        // Once localized, only nearby (or coordinate-less) cloud eggs are candidates, best first.
+        // Before that there is no precise position to query around: rank every row from the last
+        // location fix so the in-flight caps go to the likely-near eggs, else take table order.
+        final int candidates;
+        final boolean isRanked = cam != null || fix != null;
+        if (cam != null) {
+            index.withinRadius(cam.lat, cam.lng, CLOUD_RESOLVE_RADIUS_M, cloudRows);
+            index.unlocated(cloudRows);
+            candidates = rank(table, cloudRows, cam);
+        } else if (fix != null) {
+            cloudRows.clear();
+            for (int row = 0; row < table.size; row++) cloudRows.add(row);
+            candidates = rank(table, cloudRows, fix.getLatitude(), fix.getLongitude(), null);
+        } else {
+            candidates = table.size;
+        }
+
+        boolean started = false;
+        for (int i = 0; i < candidates && cloudInFlight < MAX_CLOUD_IN_FLIGHT && usable(); i++) {
+            final int row = isRanked ? rankedRow(ranked[i]) : i;
+
+            // Magnifier/puzzle anchors are GEO-only: never try Cloud
+            if (table.isPuzzle(row)) continue;
+            if (!table.has(row, EggTable.FLAG_WANTS_CLOUD)) continue;
+
+            final String id = table.id[row];
+            final Slot known = slots.get(id);
+            if (known != null && (known.state == State.PLACED_CLOUD || known.cloud != null)) continue;
+            if (known != null && known.cloudFailedAt != 0 && now - known.cloudFailedAt < ANCHOR_RETRY_MS) continue;
+            // An egg already placed or resolving terrain doesn't take another place in the budget.
+            if ((known == null || !holdsPlace(known)) && !hasRoom(cam, table, row)) continue;
+            final Slot s = known != null ? known : slot(id);
+
+            final EggIndexEntry e = table.entry(row);
+            final boolean hasGeo = table.has(row, EggTable.FLAG_HAS_GEO);
+            final String cloudId = e.bestCloudId();
+            if (cloudId == null || cloudId.isEmpty()) {
+                if (hasGeo) s.geoFallback = true;
+                continue;
+            }
+            if (EggRepository.isLikelyExpired(e.cloudHostedAt, e.cloudTtlDays)) {
+                if (hasGeo && !s.geoFallback) Log.w(TAG, "Cloud likely expired for " + e.id + " — enabling GEO fallback.");
+                if (hasGeo) s.geoFallback = true;
+                continue;
+            }
+
+            try {
+                final boolean held = holdsPlace(s);
+                final int seq = ++s.cloudSeq;
+                s.cloud = session.resolveCloudAnchorAsync(cloudId, (anchor, state) ->
+                        worker.execute(() -> onCloudResolved(s, seq, anchor, state)));
+                s.cloudStartedAt = now;
+                if (s.anchor == null && s.terrain == null) s.state = State.RESOLVING_CLOUD;
+                if (!held) live++;
+                cloudInFlight++;
+                started = true;
+                Log.d(TAG, "Resolving Cloud Anchor for " + e.id);
+            } catch (Throwable t) {
+                Log.w(TAG, "resolveCloudAnchorAsync failed for " + e.id + " — enabling GEO fallback if possible.", t);
+                s.cloud = null;
+                s.cloudFailedAt = now;
+                if (hasGeo) s.geoFallback = true;
+            }
+        }
+
+        if (started) EggExecutors.MAIN.execute(listener::onCloudResolveStarted);
+    }
+
+    /** Cloud still running after {@link #CLOUD_RESOLVE_FALLBACK_MS}: show the GEO placeholder meanwhile. */
+    private void checkCloudFallback(long now) {
+        final EggTable table = index.table();
+        for (Slot s : slots.values()) {
+            if (s.cloud == null || s.geoFallback || now - s.cloudStartedAt <= CLOUD_RESOLVE_FALLBACK_MS) continue;
+            final int row = table.rowOf(s.id);
+            if (row >= 0 && table.has(row, EggTable.FLAG_HAS_GEO)) s.geoFallback = true;
+        }
+    }
+
+    private void onCloudResolved(Slot s, int seq, @Nullable Anchor anchor, Anchor.CloudAnchorState state) {
+        // Evicted, cancelled or superseded meanwhile: drop the result.
+        if (closed) return; // session.close() releases it
+        if (slots.get(s.id) != s || s.cloud == null || s.cloudSeq != seq) {
+            if (anchor != null) try { anchor.detach(); } catch (Throwable ignore) {}
+            return;
+        }
+        s.cloud = null;
+        if (state == Anchor.CloudAnchorState.SUCCESS && anchor != null) {
+            if (s.terrain != null) { s.terrain.cancel(); s.terrain = null; }
+            install(s, anchor, State.PLACED_CLOUD); // replaces any GEO placeholder
+            Log.d(TAG, "Cloud resolve SUCCESS for " + s.id);
+        } else {
+            Log.w(TAG, "Cloud resolve error " + state + " for " + s.id + " — enabling GEO fallback if possible.");
+            if (anchor != null) try { anchor.detach(); } catch (Throwable ignore) {}
+            final EggTable table = index.table();
+            final int row = table.rowOf(s.id);
+            s.cloudFailedAt = System.currentTimeMillis();
+            if (row >= 0 && table.has(row, EggTable.FLAG_HAS_GEO)) s.geoFallback = true;
+            if (s.anchor == null && s.terrain == null) s.state = State.IDLE;
+        }
+        recount();
+        publish();
+        // A slot freed up: start the next resolve without waiting for a frame.
+        if (usable() && tickQueued.compareAndSet(false, true)) worker.execute(tick);
+    }
+
+    // ---------- GEO ----------
+    private boolean placeGeo(Earth earth, GeospatialActivity.PoseLite cam, long now) {
+        final EggTable table = index.table();
+        final float[] pose = table.pose;
+        boolean changed = false;
+
+        // 🔹Distance filter: the index only returns located eggs within GEO_PLACE_RADIUS_M of the camera
+        index.withinRadius(cam.lat, cam.lng, GEO_PLACE_RADIUS_M, geoRows);
+        final int candidates = rank(table, geoRows, cam);
+        for (int i = 0; i < candidates && usable(); i++) {
+            final int row = rankedRow(ranked[i]);
+            final int flags = table.flags[row];
+            if ((flags & EggTable.FLAG_ALLOWS_GEO) == 0) continue;   // must allow GEO
+
+            final String id = table.id[row];
+            final Slot known = slots.get(id);
+            if (known != null && (known.anchor != null || known.terrain != null)) continue;
+
+            // 🔹Cloud-first: don't place GEO for CLOUD eggs unless fallback is allowed
+            if ((flags & EggTable.FLAG_WANTS_CLOUD) != 0 && (known == null || !known.geoFallback)) continue;
+
+            final boolean needsTerrain = (flags & EggTable.FLAG_HAS_ALT) == 0;
+            if (needsTerrain && terrainInFlight >= MAX_TERRAIN_IN_FLIGHT) continue; // exact-alt eggs still go
+            if (known != null && known.placeAttemptAt != 0 && now - known.placeAttemptAt < ANCHOR_RETRY_MS) continue;
+            // A Cloud resolve in flight already holds this egg's place in the budget.
+            if ((known == null || !holdsPlace(known)) && !hasRoom(cam, table, row)) continue;
+            final Slot s = known != null ? known : slot(id);
+            final boolean held = holdsPlace(s);
+            s.placeAttemptAt = now;
+
+            final double lat = table.lat[row];
+            final double lng = table.lng[row];
+            final int po = row * EggTable.POSE_STRIDE;
+
+            final float[] q;
+            if ((flags & EggTable.FLAG_HAS_QUATERNION) != 0) {
+                q = new float[]{pose[po + EggTable.POSE_Q], pose[po + EggTable.POSE_Q + 1],
+                                pose[po + EggTable.POSE_Q + 2], pose[po + EggTable.POSE_Q + 3]};
+            } else {
+                float yaw;
+                if (!Float.isNaN(pose[po + EggTable.POSE_YAW])) {
+                    yaw = pose[po + EggTable.POSE_YAW];
+                } else if ((flags & EggTable.FLAG_HAS_HEADING) != 0) {
+                    yaw = table.heading[row];
+                } else if (cam.headingAcc <= GeospatialActivity.HEADING_MAX_ACC_DEG && !Double.isNaN(cam.heading)) {
+                    yaw = (float) cam.heading;
+                } else if (!Double.isNaN(lastGoodYawDeg)) {
+                    yaw = (float) lastGoodYawDeg;
+                } else {
+                    yaw = 0f;
+                }
+                q = yawToQuaternion(yaw);
+            }
+
+            try {
+                if (!needsTerrain) {
+                    final double alt = table.alt[row] + GeospatialActivity.ALT_GLOBAL_OFFSET_M;
+                    Anchor geo = earth.createAnchor(lat, lng, alt, q[0], q[1], q[2], q[3]);
+                    warnIfOffTarget(earth, geo, id, lat, lng);
+                    if (!held) live++;
+                    install(s, geo, State.PLACED_GEO);
+                    changed = true;
+                    Log.d(TAG, "Placed GEOSPATIAL (exact alt) for " + id);
+                } else {
+                    final double hat = (flags & EggTable.FLAG_HAS_HAT) != 0 ? pose[po + EggTable.POSE_HAT] : Double.NaN;
+                    final double camAlt = cam.alt;
+                    final int seq = ++s.terrainSeq;
+                    s.terrain = earth.resolveAnchorOnTerrainAsync(
+                            lat, lng,
+                            (float) (camAlt + GeospatialActivity.ALT_GLOBAL_OFFSET_M),
+                            q[0], q[1], q[2], q[3],
+                            (terrainAnchor, state) -> worker.execute(() ->
+                                    onTerrainResolved(earth, s, seq, terrainAnchor, state, lat, lng, q, hat, camAlt)));
+                    s.state = State.RESOLVING_TERRAIN;
+                    if (!held) live++;
+                    terrainInFlight++;
+                }
+            } catch (Throwable t) {
+                Log.w(TAG, "Anchor create failed for " + id, t);
+                s.terrain = null;
+                if (s.state == State.RESOLVING_TERRAIN) s.state = s.cloud != null ? State.RESOLVING_CLOUD : State.IDLE;
+                recount();
+            }
+        }
+        return changed;
+    }
+
+    private void onTerrainResolved(Earth earth, Slot s, int seq, @Nullable Anchor terrainAnchor,
+                                   Anchor.TerrainAnchorState state, double lat, double lng,
+                                   float[] q, double hat, double camAlt) {
+        try {
+            // Evicted, cancelled or superseded while resolving: drop the result.
+            if (closed || slots.get(s.id) != s || s.terrain == null || s.terrainSeq != seq) return;
+            s.terrain = null;
+            if (paused) {
+                // Session paused meanwhile: no createAnchor now, place it again after resume.
+                s.placeAttemptAt = 0;
+                if (s.anchor == null) s.state = s.cloud != null ? State.RESOLVING_CLOUD : State.IDLE;
+                return;
+            }
+            if (state != Anchor.TerrainAnchorState.SUCCESS || terrainAnchor == null) {
+                Log.w(TAG, "Terrain " + state + " for " + s.id + "; will retry later.");
+                if (s.anchor == null) s.state = s.cloud != null ? State.RESOLVING_CLOUD : State.IDLE;
+                return;
+            }
+
+            double targetAlt;
+            GeospatialPose tPose = earth.getGeospatialPose(terrainAnchor.getPose());
+            if (tPose != null) {
+                targetAlt = tPose.getAltitude() + (Double.isNaN(hat) ? 0.0 : hat);
+            } else {
+                targetAlt = camAlt + (Double.isNaN(hat) ? 0.0 : hat);
+            }
+            Anchor earthAnchor = earth.createAnchor(lat, lng, targetAlt, q[0], q[1], q[2], q[3]);
+            warnIfOffTarget(earth, earthAnchor, s.id, lat, lng);
+            install(s, earthAnchor, State.PLACED_GEO);
+            publish();
+            Log.d(TAG, (!Double.isNaN(hat) ? "Placed TERRAIN+HAT " : "Placed TERRAIN ")
+                    + "for " + s.id + " (alt=" + targetAlt + ")");
+        } catch (Throwable t) {
+            Log.w(TAG, "Terrain success but placement failed for " + s.id, t);
+            if (s.anchor == null) s.state = s.cloud != null ? State.RESOLVING_CLOUD : State.IDLE;
+        } finally {
+            if (terrainAnchor != null && !closed) try { terrainAnchor.detach(); } catch (Throwable ignore) {}
+            recount();
+            // A slot freed up: start the next resolve without waiting for a frame.
+            if (usable() && tickQueued.compareAndSet(false, true)) worker.execute(tick);
+        }
+    }
+
+    /** New anchors are never rejected for error; the drift check re-places them if needed. */
+    private static void warnIfOffTarget(Earth earth, Anchor a, String id, double lat, double lng) {
+        try {
+            GeospatialPose gp = earth.getGeospatialPose(a.getPose());
+            if (gp == null || Double.isNaN(gp.getLatitude()) || Double.isNaN(gp.getLongitude())) return;
+            double err = GeoHash.distanceMeters(gp.getLatitude(), gp.getLongitude(), lat, lng);
+            if (err > RELOCALIZE_IF_ERROR_M) {
+                Log.w(TAG, String.format(java.util.Locale.US,
+                        "Anchor %.2fm from target for %s (tolerating, will monitor/relocalize).", err, id));
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Anchor target check failed (tolerating)", t);
+        }
+    }
+
+    // ---------- drift ----------
+    private boolean checkDrift(Earth earth, long now) {
+        final EggTable table = index.table();
+        boolean changed = false;
+        for (Slot s : slots.values()) {
+            if (!usable()) break;
+            final Anchor a = s.anchor;
+            if (a == null || a.getTrackingState() != TrackingState.TRACKING) continue;
+            final int row = table.rowOf(s.id);
+            if (row < 0 || !table.has(row, EggTable.FLAG_HAS_GEO)) continue;
+            if (now - s.relocAttemptAt < RELOCALIZE_BACKOFF_MS) continue;
+
+            GeospatialPose ap = earth.getGeospatialPose(a.getPose());
+            if (ap == null) continue;
+            double err = GeoHash.distanceMeters(ap.getLatitude(), ap.getLongitude(), table.lat[row], table.lng[row]);
+            if (err <= RELOCALIZE_IF_ERROR_M) continue;
+
+            s.relocAttemptAt = now;
+            try { a.detach(); } catch (Throwable ignore) {}
+            s.anchor = null;
+            s.state = State.DRIFTED;
+            s.placeAttemptAt = 0; // re-place on the next tick that may place
+            if (s.cloud == null) live--;
+            if (s.cloud != null) s.state = State.RESOLVING_CLOUD;
+            changed = true;
+            Log.d(TAG, String.format(java.util.Locale.US, "Anchor for %s drifted %.2fm; re-placing", s.id, err));
+        }
+        return changed;
+    }
+
+    // ---------- budget ----------
+
+    /** True if an egg at this row may take a place in the budget; otherwise notes it as waiting. */
+    private boolean hasRoom(@Nullable GeospatialActivity.PoseLite cam, EggTable table, int row) {
+        if (live < budget) return true;
+        if (cam != null && table.has(row, EggTable.FLAG_HAS_GEO)) {
+            starvedNearestM = Math.min(starvedNearestM,
+                    GeoHash.distanceMeters(cam.lat, cam.lng, table.lat[row], table.lng[row]));
+        }
+        return false;
+    }
+
+    /**
+     * Over budget: release the worst anchors. Full with a nearer egg waiting: release one anchor
+     * that is farther by more than {@link #DISPLACE_MARGIN_M} and not viewed lately, so the
+     * waiting egg gets it on the next tick. Worst = not viewed lately, then farthest, then least
+     * recently viewed.
+     */
+    private boolean enforceBudget(@Nullable Earth earth, @Nullable GeospatialActivity.PoseLite cam, long now) {
+        final double starved = starvedNearestM;
+        starvedNearestM = Double.POSITIVE_INFINITY;
+        if (live < budget || (live == budget && Double.isInfinite(starved))) return false;
+
+        final EggTable table = index.table();
+        final List<Slot> held = budgetScratch;
+        held.clear();
+        for (Slot s : slots.values()) {
+            if (!holdsPlace(s)) continue;
+            s.distM = distanceTo(earth, cam, table, s);
+            held.add(s);
+        }
+        Collections.sort(held, (a, b) -> {
+            boolean ra = now - a.viewedAt < RECENT_VIEW_MS, rb = now - b.viewedAt < RECENT_VIEW_MS;
+            if (ra != rb) return ra ? 1 : -1;
+            int byDist = Double.compare(b.distM, a.distM);
+            return byDist != 0 ? byDist : Long.compare(a.viewedAt, b.viewedAt);
+        });
+
+        int released = 0;
+        for (int i = 0; i < held.size() && held.size() - released > budget; i++) {
+            release(held.get(i), now);
+            released++;
+        }
+        if (released == 0 && !held.isEmpty()) {
+            Slot worst = held.get(0);
+            if (now - worst.viewedAt >= RECENT_VIEW_MS && worst.distM > starved + DISPLACE_MARGIN_M) {
+                release(worst, now);
+                released++;
+            }
+        }
+        held.clear();
+        if (released > 0) recount();
+        return released > 0;
+    }
+
+    /** Meters from the camera; 0 (keep) when unknown. */
+    private double distanceTo(@Nullable Earth earth, @Nullable GeospatialActivity.PoseLite cam,
+                                     EggTable table, Slot s) {
+        if (cam == null) return 0;
+        final int row = table.rowOf(s.id);
+        if (row >= 0 && table.has(row, EggTable.FLAG_HAS_GEO)) {
+            return GeoHash.distanceMeters(cam.lat, cam.lng, table.lat[row], table.lng[row]);
+        }
+        final Anchor a = s.anchor;
+        if (earth == null || a == null || !usable() || a.getTrackingState() != TrackingState.TRACKING) return 0;
+        try {
+            GeospatialPose gp = earth.getGeospatialPose(a.getPose());
+            return gp != null ? GeoHash.distanceMeters(cam.lat, cam.lng, gp.getLatitude(), gp.getLongitude()) : 0;
+        } catch (Throwable t) {
+            return 0;
+        }
+    }
+
+    /** Out of the budget: detached and forgotten, so it is acquired again from IDLE. */
+    private void release(Slot s, long now) {
+        slots.remove(s.id);
+        detachAll(s);
+        s.state = State.EVICTED; // late terrain callbacks see this and drop their result
+        evictedAt.put(s.id, now);
+        evictions++;
+        Log.d(TAG, String.format(java.util.Locale.US, "Released anchor for %s (%.0fm) to stay within %d",
+                s.id, s.distM, budget));
+    }
+
+    private static boolean holdsPlace(Slot s) {
+        return s.anchor != null || s.cloud != null || s.terrain != null;
+    }
+
+    private void recount() {
+        int n = 0, c = 0, t = 0;
+        for (Slot s : slots.values()) {
+            if (holdsPlace(s)) n++;
+            if (s.cloud != null) c++;
+            if (s.terrain != null) t++;
+        }
+        live = n;
+        cloudInFlight = c;
+        terrainInFlight = t;
+    }
+
+    // ---------- bookkeeping ----------
+
+    private Slot slot(String id) {
+        Slot s = slots.get(id);
+        if (s == null) slots.put(id, s = new Slot(id));
+        return s;
+    }
+
+    /** Make {@code a} the only anchor of this egg. */
+    private void install(Slot s, Anchor a, State state) {
+        Anchor prev = s.anchor;
+        if (prev != null && prev != a) { try { prev.detach(); } catch (Throwable ignore) {} }
+        if (prev == null) {
+            s.viewedAt = System.currentTimeMillis(); // fresh anchors get a grace period
+            if (evictedAt.remove(s.id) != null) reacquired++;
+        }
+        s.anchor = a;
+        s.state = state;
+    }
+
+    /** Removed from (or moved in) the catalog: the egg starts over from IDLE if it comes back. */
+    private void evict(String id) {
+        Slot s = slots.remove(id);
+        if (s == null) return;
+        detachAll(s);
+        s.state = State.EVICTED; // late terrain callbacks see this and drop their result
+    }
+
+    private static void detachAll(Slot s) {
+        if (s.anchor != null) { try { s.anchor.detach(); } catch (Throwable ignore) {} s.anchor = null; }
+        if (s.cloud != null) { try { s.cloud.cancel(); } catch (Throwable ignore) {} s.cloud = null; }
+        if (s.terrain != null) { try { s.terrain.cancel(); } catch (Throwable ignore) {} s.terrain = null; }
+    }
+
+    /** Rebuild the draw list from the slots against the current table. */
+    private void publish() {
+        recount();
+        final EggTable table = index.table();
+        final Map<String, State> states = new HashMap<>(slots.size() * 4 / 3 + 1);
+        final List<Slot> placed = new ArrayList<>();
+        for (Iterator<Slot> it = slots.values().iterator(); it.hasNext(); ) {
+            Slot s = it.next();
+            if (s.state == State.IDLE && !holdsPlace(s) && !s.geoFallback
+                    && s.cloudFailedAt == 0 && s.placeAttemptAt == 0) {
+                it.remove(); // nothing worth remembering
+                continue;
+            }
+            states.put(s.id, s.state);
+            if (s.anchor != null && table.rowOf(s.id) >= 0) placed.add(s);
+        }
+        final Slot[] drawn = placed.toArray(new Slot[0]);
+        final int[] rows = new int[drawn.length];
+        for (int i = 0; i < drawn.length; i++) rows[i] = table.rowOf(drawn[i].id);
+        snapshot = new Snapshot(table, drawn, rows, Collections.unmodifiableMap(states),
+                live, evictions, reacquired);
+    }
+
+    private static float[] yawToQuaternion(float yawDeg) {
+        float r = (float) Math.toRadians(yawDeg);
+        float s = (float) Math.sin(r * 0.5f), c = (float) Math.cos(r * 0.5f);
+        return new float[]{0f, s, 0f, c};
+    }
+}
@@ -1,8 +1,6 @@
 package com.example.virtualtourar;
 
-import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
@@ -14,22 +12,19 @@ import android.widget.TextView;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.example.virtualtourar.data.EggEntry;
+import com.example.virtualtourar.data.CollectionRepository;
+import com.example.virtualtourar.data.EggDetails;
 import com.example.virtualtourar.data.EggRepository;
 import com.google.android.material.button.MaterialButton;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeSet;
 
 public class CollectiblesActivity extends AppCompatActivity {
 
-    private static final String SP_NAME = "GeospatialActivity";
-    private static final String COLLECTED_EGGS_KEY = "COLLECTED_EGGS";
-
     private EggRepository repository;
     private ProgressBar progress;
     private ListView listView;
@@ -60,19 +55,11 @@ public class CollectiblesActivity extends AppCompatActivity {
     private void loadData() {
         showLoading(true);
 
-        // Read collected IDs saved by GeospatialActivity
-        SharedPreferences sp = getSharedPreferences(SP_NAME, Context.MODE_PRIVATE);
-        Set<String> collectedIds = new HashSet<>(sp.getStringSet(COLLECTED_EGGS_KEY, new HashSet<>()));
-
-        repository.fetchAllEggs()
-                .addOnSuccessListener(allEggs -> {
-                    // Filter to collected eggs only
-                    List<EggEntry> collected = new ArrayList<>();
-                    for (EggEntry e : allEggs) {
-                        if (e != null && e.id != null && collectedIds.contains(e.id)) {
-                            collected.add(e);
-                        }
-                    }
+        // Collected IDs from the per-user record (sorted → stable list order), then only those
+        // documents (cache first), not the whole catalog
+        CollectionRepository.get(this).fetchCollectedIds()
+                .onSuccessTask(ids -> repository.fetchEggsByIds(new TreeSet<>(ids)))
+                .addOnSuccessListener(collected -> {
                     bindList(collected);
                     showLoading(false);
                 })
@@ -83,7 +70,7 @@ public class CollectiblesActivity extends AppCompatActivity {
                 });
     }
 
-    private void bindList(List<EggEntry> items) {
+    private void bindList(List<EggDetails> items) {
         if (items == null || items.isEmpty()) {
             emptyView.setText("No collectibles yet.\nFind some eggs in AR first!");
             emptyView.setVisibility(View.VISIBLE);
@@ -93,7 +80,7 @@ public class CollectiblesActivity extends AppCompatActivity {
 
         // Build a simple dataset for SimpleAdapter (title + desc)
         ArrayList<Map<String, String>> data = new ArrayList<>();
-        for (EggEntry e : items) {
+        for (EggDetails e : items) {
             Map<String, String> row = new HashMap<>();
             row.put("title", e.title != null ? e.title : "Egg");
             row.put("desc",  e.description != null ? e.description : "");
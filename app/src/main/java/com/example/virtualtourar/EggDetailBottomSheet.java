@@ -17,10 +17,9 @@ import androidx.annotation.Nullable;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.example.virtualtourar.data.MediaResolver;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
 import com.google.android.material.button.MaterialButton;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 
 /** Bottom sheet showing an egg’s details (title, desc, image, audio). */
 public class EggDetailBottomSheet extends BottomSheetDialogFragment {
@@ -73,7 +72,7 @@ public class EggDetailBottomSheet extends BottomSheetDialogFragment {
 
         // IMAGE
         if (!TextUtils.isEmpty(iu)) {
-            String norm = normalizeUrlOrPath(iu);
+            String norm = MediaResolver.normalize(iu);
             loadImage(norm, img);
         } else {
             img.setVisibility(View.GONE);
@@ -82,7 +81,7 @@ public class EggDetailBottomSheet extends BottomSheetDialogFragment {
 
         // AUDIO
         if (!TextUtils.isEmpty(au)) {
-            final String auNorm = normalizeUrlOrPath(au);
+            final String auNorm = MediaResolver.normalize(au);
             playPause.setOnClickListener(btn -> prepareAndToggle(auNorm));
         } else {
             playPause.setVisibility(View.GONE);
@@ -100,58 +99,25 @@ public class EggDetailBottomSheet extends BottomSheetDialogFragment {
         if (imageProgress != null) imageProgress.setVisibility(View.VISIBLE);
         iv.setVisibility(View.VISIBLE);
 
-        try {
-            if (TextUtils.isEmpty(urlOrPath)) {
-                hideImage(iv, "empty url");
-                return;
-            }
-
-            // Local uris
-            if (urlOrPath.startsWith("content://") || urlOrPath.startsWith("file://")) {
-                Glide.with(this)
-                        .load(Uri.parse(urlOrPath))
-                        .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
-                        .into(iv);
-                if (imageProgress != null) imageProgress.setVisibility(View.GONE);
-                return;
-            }
-
-            // Direct HTTP(S)
-            if (looksHttp(urlOrPath)) {
-                Glide.with(this)
-                        .load(urlOrPath)
-                        .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
-                        .timeout(20_000)
-                        .into(iv);
-                if (imageProgress != null) imageProgress.setVisibility(View.GONE);
-                return;
-            }
-
-            // Firebase Storage: gs://… or bucket path
-            StorageReference ref = storageRefFrom(urlOrPath);
-            if (ref == null) {
-                hideImage(iv, "bad storage ref: " + urlOrPath);
-                return;
-            }
-            ref.getDownloadUrl()
-                    .addOnSuccessListener(uri -> {
-                        if (!isAdded()) return; // fragment gone
-                        Glide.with(this)
-                                .load(uri)
-                                .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
-                                .timeout(20_000)
-                                .into(iv);
-                        if (imageProgress != null) imageProgress.setVisibility(View.GONE);
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.w(TAG, "getDownloadUrl failed", e);
-                        hideImage(iv, "download url fail");
-                    });
-
-        } catch (Throwable t) {
-            Log.w(TAG, "loadImage failed: " + urlOrPath, t);
-            hideImage(iv, "exception");
+        if (TextUtils.isEmpty(urlOrPath)) {
+            hideImage(iv, "empty url");
+            return;
         }
+
+        MediaResolver.get().resolve(urlOrPath)
+                .addOnSuccessListener(uri -> {
+                    if (!isAdded()) return; // fragment gone
+                    Glide.with(this)
+                            .load(uri)
+                            .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
+                            .timeout(20_000)
+                            .into(iv);
+                    if (imageProgress != null) imageProgress.setVisibility(View.GONE);
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Image resolve failed: " + urlOrPath, e);
+                    hideImage(iv, "resolve fail");
+                });
     }
 
     private void hideImage(ImageView iv, String reason) {
@@ -160,11 +126,6 @@ public class EggDetailBottomSheet extends BottomSheetDialogFragment {
         Log.d(TAG, "Hiding image: " + reason);
     }
 
-    private static boolean looksHttp(String s) {
-        return s.startsWith("https://") || s.startsWith("http://")
-                || s.startsWith("https%3A%2F%2F") || s.startsWith("http%3A%2F%2F");
-    }
-
     // ---------- AUDIO HELPERS ----------
 
     private void prepareAndToggle(String urlOrPath) {
@@ -184,29 +145,13 @@ public class EggDetailBottomSheet extends BottomSheetDialogFragment {
         if (audioProgress != null) audioProgress.setVisibility(View.VISIBLE);
         playPause.setEnabled(false);
 
-        try {
-            if (looksHttp(urlOrPath) || urlOrPath.startsWith("content://") || urlOrPath.startsWith("file://")) {
-                startPlayer(Uri.parse(urlOrPath));
-            } else {
-                StorageReference ref = storageRefFrom(urlOrPath);
-                if (ref == null) {
+        MediaResolver.get().resolve(urlOrPath)
+                .addOnSuccessListener(uri -> { if (isAdded()) startPlayer(uri); })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Audio resolve failed", e);
                     if (audioProgress != null) audioProgress.setVisibility(View.GONE);
                     playPause.setEnabled(true);
-                    return;
-                }
-                ref.getDownloadUrl()
-                        .addOnSuccessListener(this::startPlayer)
-                        .addOnFailureListener(e -> {
-                            Log.w(TAG, "Audio getDownloadUrl failed", e);
-                            if (audioProgress != null) audioProgress.setVisibility(View.GONE);
-                            playPause.setEnabled(true);
-                        });
-            }
-        } catch (Throwable t) {
-            Log.w(TAG, "prepareAndToggle failed", t);
-            if (audioProgress != null) audioProgress.setVisibility(View.GONE);
-            playPause.setEnabled(true);
-        }
+                });
     }
 
     private void startPlayer(Uri uri) {
@@ -250,44 +195,6 @@ public class EggDetailBottomSheet extends BottomSheetDialogFragment {
         player = null;
     }
 
-    private @Nullable StorageReference storageRefFrom(String urlOrPath) {
-        try {
-            if (TextUtils.isEmpty(urlOrPath)) return null;
-            if (urlOrPath.startsWith("gs://")) {
-                return FirebaseStorage.getInstance().getReferenceFromUrl(urlOrPath);
-            }
-            // treat as bucket path (allow leading '/')
-            String p = urlOrPath.startsWith("/") ? urlOrPath.substring(1) : urlOrPath;
-            return FirebaseStorage.getInstance().getReference().child(p);
-        } catch (Exception e) {
-            Log.w(TAG, "storageRefFrom failed for: " + urlOrPath, e);
-            return null;
-        }
-    }
-
-    /**
-     * Normalize Firestore/Storage strings:
-     *  - trim quotes
-     *  - append alt=media to REST storage URLs (if those happen to be stored)
-     */
-    private static String normalizeUrlOrPath(String raw) {
-        if (raw == null) return "";
-        String s = raw.trim();
-        if (s.isEmpty()) return s;
-
-        // Trim accidental surrounding quotes
-        if (s.startsWith("\"") && s.endsWith("\"") && s.length() > 1) {
-            s = s.substring(1, s.length() - 1).trim();
-        }
-
-        // If it’s a Firebase REST URL, ensure direct binary download
-        if (s.startsWith("https://firebasestorage.googleapis.com/v0/")
-                && !s.contains("alt=media")) {
-            s = s + (s.contains("?") ? "&" : "?") + "alt=media";
-        }
-        return s;
-    }
-
     @Override public void onDestroyView() {
         super.onDestroyView();
         releasePlayer();
@@ -2,6 +2,7 @@
 package com.example.virtualtourar;
 
 import android.Manifest;
+import android.annotation.SuppressLint;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
@@ -11,6 +12,7 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.hardware.Sensor;
 import android.hardware.SensorManager;
+import android.location.Location;
 import android.media.MediaPlayer;
 import android.net.Uri;
 import android.opengl.GLSurfaceView;
@@ -42,10 +44,19 @@ import androidx.fragment.app.DialogFragment;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.example.virtualtourar.data.CollectionRepository;
+import com.example.virtualtourar.data.EggDetails;
 import com.example.virtualtourar.data.EggEntry;
+import com.example.virtualtourar.data.EggIndexEntry;
+import com.example.virtualtourar.data.EggExecutors;
 import com.example.virtualtourar.data.EggRepository;
+import com.example.virtualtourar.data.EggSnapshotStore;
+import com.example.virtualtourar.data.MediaResolver;
+import com.example.virtualtourar.data.EggTable;
+import com.example.virtualtourar.data.spatial.EggSpatialIndex;
 import com.example.virtualtourar.geofence.GeofenceManager; // for geofencing
 import com.example.virtualtourar.helpers.CameraPermissionHelper;
+import com.example.virtualtourar.helpers.ConnectivityMonitor;
 import com.example.virtualtourar.helpers.DisplayRotationHelper;
 import com.example.virtualtourar.helpers.FullScreenHelper;
 import com.example.virtualtourar.helpers.LocationPermissionHelper;
@@ -59,6 +70,9 @@ import com.example.virtualtourar.samplerender.Texture;
 import com.example.virtualtourar.samplerender.arcore.BackgroundRenderer;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.ar.core.Anchor;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.Camera;
@@ -78,22 +92,22 @@ import com.google.ar.core.exceptions.UnavailableDeviceNotCompatibleException;
 import com.google.ar.core.exceptions.UnsupportedConfigurationException;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import android.net.ConnectivityManager;
-import android.net.Network;
-import android.net.NetworkCapabilities;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /** Geospatial viewer (SampleRender): Cloud resolve + GEO/TERRAIN + facade-aware orientation + quiz gating + egg-layer digicam zoom. */
 public class GeospatialActivity extends AppCompatActivity
@@ -119,11 +133,6 @@ public class GeospatialActivity extends AppCompatActivity
     private static final float MODEL_SCALE_MIN      = 0.005f;  // clamp small
     private static final float MODEL_SCALE_MAX      = 0.080f;  // clamp large
 
-    // OBJ orientation defaults
-    private static final float MODEL_ROT_X_DEG = 0f;
-    private static final float MODEL_ROT_Y_DEG = 0f;
-    private static final float MODEL_ROT_Z_DEG = 0f;
-
     // Camera "digicam" zoom via BackgroundRenderer UV crop ONLY
     private float userScaleMultiplier = 1.0f;
     private static final float USER_SCALE_MIN = 0.30f;
@@ -132,8 +141,8 @@ public class GeospatialActivity extends AppCompatActivity
     // Placement gating (TIGHTER)
     private static final double MAX_H_ACC_TO_PLACE = 15.0;  // was 12.0
     private static final double MAX_V_ACC_TO_PLACE = 12.0;  // was 10.0
-    private static final double HEADING_MAX_ACC_DEG = 20.0; // was 25.0
-    private static final double ALT_GLOBAL_OFFSET_M = 0.0;
+    static final double HEADING_MAX_ACC_DEG = 20.0; // was 25.0
+    static final double ALT_GLOBAL_OFFSET_M = 0.0;
     private static final long   LOCALIZE_STABLE_MS  = 400L; // was 1500L
     private long lastAccOkayAtMs = 0L;
     // Increase "grace" before force-placing a bit
@@ -146,11 +155,6 @@ public class GeospatialActivity extends AppCompatActivity
     private double emaLat, emaLng, emaAlt;
     private Double lastGoodYawDeg = null;
 
-    // Re-localize (STRicter)
-    private static final double RELOCALIZE_IF_ERROR_M = 1.0; // was 3.0
-    private static final long   RELOCALIZE_BACKOFF_MS = 20_000L;
-    private final Map<String, Long> lastRelocAttemptAt = new HashMap<>();
-
     // Tap picking
     private static final float PICK_BASE_RADIUS_M = 0.24f;
     private static final float PICK_RADIUS_PER_M  = 0.040f;
@@ -158,6 +162,7 @@ public class GeospatialActivity extends AppCompatActivity
 
     private long lastUiStatusAt = 0L;
     private static final long UI_STATUS_MS = 400L;
+    private long lastWaitHintAt = 0L;
 
     // Proximity nudge (in-session only)
     private static final double NEARBY_RADIUS_M  = 8.0;
@@ -180,6 +185,7 @@ public class GeospatialActivity extends AppCompatActivity
     // ARCore
     private volatile Session session;
     private DisplayRotationHelper displayRotationHelper;
+    private ConnectivityMonitor connectivity;
     private final SnackbarHelper messageSnackbarHelper = new SnackbarHelper();
     private final TrackingStateHelper trackingStateHelper = new TrackingStateHelper(this);
     private SampleRender render;
@@ -196,33 +202,47 @@ public class GeospatialActivity extends AppCompatActivity
     private Texture puzzleTexture;
     private Shader  puzzleShader;
 
-    // Anchors
-    private final Object anchorsLock = new Object();
-    @GuardedBy("anchorsLock") private final Map<Anchor, EggEntry> anchorToEgg = new HashMap<>();
-    @GuardedBy("anchorsLock") private final HashSet<String>       placedIds   = new HashSet<>();
-
-    // NEW: single-owner maps to ensure one anchor per egg
-    @GuardedBy("anchorsLock") private final Map<String, Anchor> anchorByEggId = new HashMap<>();
-    @GuardedBy("anchorsLock") private final Map<String, String> anchorKindByEggId = new HashMap<>(); // "CLOUD" | "GEO"
-
-    // Pending Cloud
-    private static class PendingCloud {
-        final Anchor a; final EggEntry e; final long startedAt = System.currentTimeMillis();
-        PendingCloud(Anchor a, EggEntry e){ this.a=a; this.e=e; }
-    }
-    private static final long CLOUD_RESOLVE_FALLBACK_MS = 10_000L; // 10s
-    private final Map<String, PendingCloud> pendingCloudByEggId = new HashMap<>();
-
-    // GEO fallback
-    private final Set<String> allowGeoFallbackIds = new HashSet<>();
+    // Anchors: placement, resolve and drift run on its worker; the GL thread draws its snapshot
+    private AnchorManager anchors;
+    /** GL thread only. Snapshot the draw caches below were computed for. */
+    private AnchorManager.Snapshot drawSnapshot = AnchorManager.Snapshot.EMPTY;
+    // Per draw slot: last anchor pose seen, and pose · egg rotation · lift computed from it.
+    private float[] drawPose = new float[16 * 16];
+    private float[] drawModel = new float[16 * 16];
+    private boolean[] drawModelValid = new boolean[16];
 
     // Data
+    private static final int CATALOG_PAGE_SIZE = 500;
+    /** Deltas arrive in bursts; persist the snapshot and re-register geofences once they settle. */
+    private static final long CATALOG_PERSIST_DEBOUNCE_MS = 5_000L;
+    /** Eggs whose media is resolved ahead of time: ≤ 2 refs each, well under the resolver's LRU. */
+    private static final int PREWARM_MAX_EGGS = MediaResolver.MAX_ENTRIES / 8;
+    /** Of those, how many images Glide also fetches into its caches. */
+    private static final int PREWARM_PRELOAD_IMAGES = 12;
     private EggRepository repository;
-    private final List<EggEntry> eggs = new ArrayList<>();
-
-    // Media URL caches
-    private final Map<String, Uri> imageUrlCache = new HashMap<>();
-    private final Map<String, Uri> audioUrlCache = new HashMap<>();
+    private CollectionRepository collections;
+    private EggSnapshotStore snapshotStore;
+    @Nullable private ListenerRegistration eggsListener;
+    @Nullable private Timestamp lastSyncCursor;
+    /** Center of the last base load (null: whole collection); the delta stream covers the same area. */
+    @Nullable private Location catalogCenter;
+    private final android.os.Handler catalogHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+    private final Runnable persistCatalog = this::persistCatalog;
+    private boolean catalogDirty;
+    /** Catalog rebuilds (table, spatial index) run here, one at a time, in call order. */
+    private final Executor catalogWorker = EggExecutors.newSerialExecutor(EggExecutors.DECODE);
+    /** Confined to catalogWorker: the latest table it built (may be ahead of eggIndex). */
+    private EggTable workingTable = EggTable.EMPTY;
+    /**
+     * Immutable catalog snapshot: the columnar table plus its spatial index, replaced (never
+     * mutated) on the main thread as deltas arrive; read lock-free by the GL-thread loops.
+     */
+    private volatile EggSpatialIndex eggIndex = EggSpatialIndex.EMPTY;
+    // GL-thread scratch for row queries
+    private final EggTable.Rows nearbyRows = new EggTable.Rows();
+
+    // Media references → openable Uris (shared LRU, deduplicated getDownloadUrl)
+    private final MediaResolver media = MediaResolver.get();
 
     // Matrices
     private final float[] modelMatrix = new float[16];
@@ -230,6 +250,12 @@ public class GeospatialActivity extends AppCompatActivity
     private final float[] projMatrix  = new float[16];
     private final float[] mvMatrix    = new float[16];
     private final float[] mvpMatrix   = new float[16];
+    /** GL thread only. Zoomed projection, rebuilt when the camera projection or the zoom changes. */
+    private final float[] projZoomed  = new float[16];
+    private final float[] projZoomedSrc = new float[16];
+    private float projZoomedFor = Float.NaN;
+    /** GL thread only. Raw anchor pose of the current draw slot. */
+    private final float[] anchorPoseScratch = new float[16];
 
     // Gestures
     private final Object singleTapLock = new Object();
@@ -242,10 +268,6 @@ public class GeospatialActivity extends AppCompatActivity
     private SharedPreferences sharedPreferences;
     private boolean installRequested;
 
-    // Retry backoff
-    private final Map<String, Long> anchorAttemptAtMs = new HashMap<>();
-    private static final long ANCHOR_RETRY_MS = 30_000L;
-
     // Nearby notifications (in-session)
     private final Set<String> nearbyNotified = new HashSet<>();
 
@@ -257,7 +279,7 @@ public class GeospatialActivity extends AppCompatActivity
     private static final float STAR_VISUAL_MULT   = 0.48f; // shrink star ~25%
     private static final float PUZZLE_VISUAL_MULT = 5.10f; // enlarge magnifier ~40%
 
-    private static final class PoseLite {
+    static final class PoseLite {
         final double lat, lng, alt, hAcc, vAcc, heading, headingAcc;
         PoseLite(double lat, double lng, double alt,
                  double hAcc, double vAcc, double heading, double headingAcc) {
@@ -266,13 +288,17 @@ public class GeospatialActivity extends AppCompatActivity
         }
     }
 
+    /** Latest localized camera pose (GL thread writes); orders media prefetch by distance. */
+    @Nullable private volatile PoseLite lastCamPose;
+    /** Fused last location used for the catalog query, until the camera localizes. */
+    @Nullable private volatile Location lastFix;
+
     // ------- user-friendly wait hints -------
     private long resumedAtMs = 0L;
     private boolean waitToastShown = false;
     private boolean anchorLoadingHintShown = false;
-    // At top-level fields
-    private volatile boolean noInternetDialogShown = false;
-    @Nullable private AlertDialog noInternetDialog = null;
+    /** Main thread. True while our "offline" snackbar is up (so we only hide our own). */
+    private boolean offlineNoticeShown = false;
 
     @Override protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -285,11 +311,15 @@ public class GeospatialActivity extends AppCompatActivity
         statusText.setFocusable(false);
 
         displayRotationHelper = new DisplayRotationHelper(this);
+        connectivity = new ConnectivityMonitor(this);
+        connectivity.setListener(this::onConnectivityChanged);
+        anchors = new AnchorManager(AnchorManager.DEFAULT_BUDGET, this::onCloudResolveStarted);
         render = new SampleRender(surfaceView, this, getAssets());
         installRequested = false;
 
         try {
             FirebaseAuth.getInstance().signInAnonymously()
+                    .addOnSuccessListener(r -> CollectionRepository.get(this).flush())
                     .addOnFailureListener(e -> Log.w(TAG, "Firebase anonymous auth failed", e));
         } catch (Throwable t) {
             Log.w(TAG, "FirebaseAuth init skipped", t);
@@ -338,35 +368,19 @@ public class GeospatialActivity extends AppCompatActivity
         });
 
         repository = new EggRepository();
-        repository.fetchAllEggs()
-                .addOnSuccessListener(list -> {
-                    eggs.clear();
-                    eggs.addAll(list);
-                    prewarmAssets(list);
-                    synchronized (anchorsLock) {
-                        placedIds.clear();
-                        anchorByEggId.clear();
-                        anchorKindByEggId.clear();
-                        anchorToEgg.clear();
-                    }
-                    nearbyNotified.clear();
-                    pendingCloudByEggId.clear();
-                    allowGeoFallbackIds.clear();
-                    Log.d(TAG, "Fetched eggs: " + eggs.size());
-                    toast("Eggs fetched: " + eggs.size());
-
-                    // Register geofences so notifications work when the app is NOT open
-                    maybeRequestBackgroundLocation();
-                    try {
-                        new GeofenceManager(getApplicationContext()).registerForEggs(eggs);
-                    } catch (Throwable t) {
-                        Log.w(TAG, "Geofence register failed", t);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to fetch eggs", e);
-                    toast("Failed to load eggs");
-                });
+        collections = CollectionRepository.get(this);
+        snapshotStore = new EggSnapshotStore(this);
+        // Render the last synced catalog right away, then reconcile with the server: the full load
+        // replaces it (other area, deletes). Its cursor only matters if that load fails.
+        snapshotStore.loadAsync().addOnCompleteListener(t -> {
+            EggSnapshotStore.Snapshot snap = t.isSuccessful() ? t.getResult() : null;
+            if (snap != null && !snap.eggs.isEmpty() && catalog().isEmpty()) {
+                lastSyncCursor = snap.syncCursor;
+                applyCatalogChanges(snap.eggs, Collections.emptyList());
+                Log.d(TAG, "Showing " + snap.eggs.size() + " cached eggs while syncing");
+            }
+            loadCatalog();
+        });
 
         createNotifChannel();
     }
@@ -375,6 +389,7 @@ public class GeospatialActivity extends AppCompatActivity
         super.onResume();
         surfaceView.onResume();
         displayRotationHelper.onResume();
+        connectivity.onResume();
 
         // reset wait-hint state for this session
         resumedAtMs = System.currentTimeMillis();
@@ -396,23 +411,40 @@ public class GeospatialActivity extends AppCompatActivity
         // Handle geofence notification tap
         String openId = getIntent() != null ? getIntent().getStringExtra("openEggId") : null;
         if (openId != null) {
-            EggEntry toOpen = null;
-            for (EggEntry e : eggs) { if (openId.equals(e.id)) { toOpen = e; break; } }
-            if (toOpen != null) showEggDialog(toOpen);
+            EggIndexEntry toOpen = catalog().get(openId);
+            if (toOpen != null) openEggDialog(toOpen);
             getIntent().removeExtra("openEggId");
         }
     }
 
     @Override protected void onPause() {
         super.onPause();
+        if (collections != null) collections.flush();
+        if (catalogDirty) {
+            // Flush a pending delta write now, without the permission prompt persistCatalog may show.
+            catalogHandler.removeCallbacks(persistCatalog);
+            catalogDirty = false;
+            snapshotStore.saveAsync(catalog().asList(), lastSyncCursor);
+            submitGeofences();
+        }
+        anchors.pause(); // no anchor work in flight while the session pauses
         if (session != null) { try { session.pause(); } catch (Exception ignore) {} }
         surfaceView.onPause();
         displayRotationHelper.onPause();
+        connectivity.onPause();
+        Log.d(TAG, media.stats());
     }
 
     @Override protected void onDestroy() {
+        if (eggsListener != null) { eggsListener.remove(); eggsListener = null; }
+        catalogHandler.removeCallbacks(persistCatalog);
+        final CountDownLatch anchorsClosed = anchors.close();
         if (session != null) {
-            surfaceView.queueEvent(() -> { try { session.close(); } catch (Exception ignore) {} });
+            surfaceView.queueEvent(() -> {
+                // Anchors are detached (and the worker idle) before the session goes away.
+                try { anchorsClosed.await(1, TimeUnit.SECONDS); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+                try { session.close(); } catch (Exception ignore) {}
+            });
         }
         super.onDestroy();
     }
@@ -520,6 +552,20 @@ public class GeospatialActivity extends AppCompatActivity
         return ok;
     }
 
+    /** Refreshes {@link #projZoomed} if {@link #projMatrix} or the zoom changed since last frame. */
+    private void updateZoomedProjection() {
+        float zoom = userScaleMultiplier;
+        if (zoom == projZoomedFor && sameMatrix(projMatrix, projZoomedSrc, 0)) return;
+        System.arraycopy(projMatrix, 0, projZoomedSrc, 0, 16);
+        applyZoomToProjection(projZoomed, projMatrix, zoom);
+        projZoomedFor = zoom;
+    }
+
+    private static boolean sameMatrix(float[] a, float[] b, int bOffset) {
+        for (int k = 0; k < 16; k++) if (a[k] != b[bOffset + k]) return false;
+        return true;
+    }
+
     // --- Projection zoom helper: keeps virtual FOV in sync with background crop
     // Only scale focal lengths (m00 and m11). Do NOT touch other cells.
     private static void applyZoomToProjection(float[] outProj, float[] inProj, float zoom) {
@@ -531,40 +577,6 @@ public class GeospatialActivity extends AppCompatActivity
 
     @Override public void onDrawFrame(SampleRender render) {
         if (session == null) return;
-        // ---- INTERNET CHECK ----
-        if (!hasInternetConnection()) {
-            if (!noInternetDialogShown) {
-                noInternetDialogShown = true;
-                runOnUiThread(() -> {
-                    if (isFinishing() || isDestroyed()) return;
-                    if (noInternetDialog != null && noInternetDialog.isShowing()) return;
-
-                    noInternetDialog = new AlertDialog.Builder(GeospatialActivity.this)
-                            .setTitle("No Internet Connection")
-                            .setMessage("This app requires an active internet connection.\n\n" +
-                                    "Please check your network and restart the app.")
-                            .setCancelable(false)
-                            .setPositiveButton("Exit", (d, w) -> {
-                                d.dismiss();
-                                finish();          // close activity
-                            })
-                            .create();
-                    noInternetDialog.show();
-                });
-            }
-            return; // stop AR loop until user fixes the issue
-        } else {
-            // Internet came back → clean up dialog, allow rendering to continue
-            if (noInternetDialogShown) {
-                noInternetDialogShown = false;
-                runOnUiThread(() -> {
-                    if (noInternetDialog != null && noInternetDialog.isShowing()) {
-                        noInternetDialog.dismiss();
-                    }
-                    noInternetDialog = null;
-                });
-            }
-        }
         if (!backgroundReady || backgroundRenderer == null) return;
 
         if (!hasSetTextureNames) {
@@ -645,10 +657,10 @@ public class GeospatialActivity extends AppCompatActivity
             );
         }
 
+        if (camPoseLite != null) lastCamPose = camPoseLite;
         updateEarthStatus(earth, camPoseLite, null);
 
-        try { attemptResolveCloudAnchors(); } catch (Throwable t) { Log.w(TAG, "Cloud resolve loop failed", t); }
-
+        boolean placeOk = false;
         if (earth != null && camPoseLite != null) {
             // ---- Combined logic: strict + relaxed + force-after-grace ----
             final double hAcc = camPoseLite.hAcc;
@@ -682,30 +694,37 @@ public class GeospatialActivity extends AppCompatActivity
             if (goodStrict) {
                 if (lastAccOkayAtMs == 0L) lastAccOkayAtMs = nowMs;
                 if (nowMs - lastAccOkayAtMs >= LOCALIZE_STABLE_MS) {
-                    placeGeoAnchorsExactly(earth, camPoseLite);
+                    placeOk = true;
                     checkNearbyNudges(camPoseLite);
                 }
             } else if (goodRelaxed) {
                 if (lastAccOkayAtMs == 0L) lastAccOkayAtMs = nowMs;
                 if (nowMs - lastAccOkayAtMs >= STABLE_MS_RELAXED) {
-                    placeGeoAnchorsExactly(earth, camPoseLite);
+                    placeOk = true;
                     checkNearbyNudges(camPoseLite);
                 }
             } else if (force && hAcc <= 40.0 && vAcc <= 30.0) {
                 // Grace period elapsed — try anyway so user sees something.
-                placeGeoAnchorsExactly(earth, camPoseLite);
+                placeOk = true;
                 checkNearbyNudges(camPoseLite);
             } else {
                 // Not good yet; reset stability timer and show a brief hint.
                 lastAccOkayAtMs = 0L;
-                runOnUiThread(() -> statusText.setText(
-                        String.format(Locale.US,
-                                "Waiting for localization… HAcc=%.1fm VAcc=%.1fm samples=%d",
-                                hAcc, vAcc, emaSamples)));
+                if (nowMs - lastWaitHintAt >= UI_STATUS_MS) { // not a String + Runnable every frame
+                    lastWaitHintAt = nowMs;
+                    final int samples = emaSamples;
+                    runOnUiThread(() -> statusText.setText(
+                            String.format(Locale.US,
+                                    "Waiting for localization… HAcc=%.1fm VAcc=%.1fm samples=%d",
+                                    hAcc, vAcc, samples)));
+                }
             }
         }
 
-        if (earth != null) { try { maybeRelocalizeDriftedAnchors(earth); } catch (Throwable t) { Log.w(TAG, "relocalize check failed", t); } }
+        // Cloud resolve, placement and drift checks run on the anchor worker. Offline it keeps
+        // what is placed (GEO/terrain need no network once resolved) and holds off Cloud.
+        anchors.onFrame(session, earth, camPoseLite, lastFix, placeOk, connectivity.isOnline(),
+                lastGoodYawDeg != null ? lastGoodYawDeg : Double.NaN);
 
         try { handleTap(frame); } catch (Throwable t) { Log.w(TAG, "handleTap failed", t); }
 
@@ -713,68 +732,66 @@ public class GeospatialActivity extends AppCompatActivity
         camera.getProjectionMatrix(projMatrix, 0, Z_NEAR, Z_FAR);
         camera.getViewMatrix(viewMatrix, 0);
 
-        float[] projZoomed = new float[16];
-        applyZoomToProjection(projZoomed, projMatrix, userScaleMultiplier);
+        updateZoomedProjection();
 
         render.clear(virtualSceneFramebuffer, 0f, 0f, 0f, 0f);
-        synchronized (anchorsLock) {
-            for (Map.Entry<Anchor, EggEntry> entry : anchorToEgg.entrySet()) {
-                Anchor a = entry.getKey();
-                if (a.getTrackingState() != TrackingState.TRACKING) continue;
-
-                Pose p = a.getPose();
-                p.toMatrix(modelMatrix, 0);
-
-                float[] eulerDeg = getEggEulerDeg(entry.getValue());
-                float rx = eulerDeg[0], ry = eulerDeg[1], rz = eulerDeg[2];
-
-                float[] R = new float[16];
-                float[] tmp = new float[16];
-                Matrix.setIdentityM(R, 0);
-
-                Matrix.setRotateM(tmp, 0, rz, 0f, 0f, 1f);
-                Matrix.multiplyMM(R, 0, tmp, 0, R, 0);
-                Matrix.setRotateM(tmp, 0, ry, 0f, 1f, 0f);
-                Matrix.multiplyMM(R, 0, tmp, 0, R, 0);
-                Matrix.setRotateM(tmp, 0, rx, 1f, 0f, 0f);
-                Matrix.multiplyMM(R, 0, tmp, 0, R, 0);
-
-                Matrix.multiplyMM(modelMatrix, 0, modelMatrix, 0, R, 0);
-                Matrix.translateM(modelMatrix, 0, 0f, MODEL_LIFT_M, 0f);
-
-                // Decide which model this is (puzzle vs star) ONCE
-                boolean puzzle = isPuzzle(entry.getValue());
-
-                // 1) per-egg override if provided
-                float s = getPerEggScaleOrNeg1(entry.getValue());
-                if (s < 0f) {
-                    // 2) otherwise: auto-scale by current distance-to-camera (gentle, clamped)
-                    Matrix.multiplyMM(mvMatrix, 0, viewMatrix, 0, modelMatrix, 0);
-                    float dx = mvMatrix[12], dy = mvMatrix[13], dz = mvMatrix[14];
-                    float distanceM = (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
-                    s = (distanceM > 0f) ? autoScaleForDistance(distanceM) : MODEL_SCALE_DEFAULT;
+        final AnchorManager.Snapshot snap = anchors.snapshot();
+        final long frameMs = System.currentTimeMillis();
+        prepareDrawCaches(snap);
+        final EggTable table = snap.table;
+        final float[] pose = table.pose;
+        for (int i = 0; i < snap.count; i++) {
+            Anchor a = snap.anchor(i);
+            if (a.getTrackingState() != TrackingState.TRACKING) continue;
+            final int row = snap.row(i);
+            final int po = row * EggTable.POSE_STRIDE;
+
+            // Pose · precompiled egg rotation · lift, recomputed only when the anchor moved.
+            a.getPose().toMatrix(anchorPoseScratch, 0);
+            final int mo = i * 16;
+            if (!drawModelValid[i] || !sameMatrix(anchorPoseScratch, drawPose, mo)) {
+                System.arraycopy(anchorPoseScratch, 0, drawPose, mo, 16);
+                if (!table.has(row, EggTable.FLAG_IDENTITY_ROTATION)) {
+                    Matrix.multiplyMM(drawModel, mo, anchorPoseScratch, 0, pose, po + EggTable.POSE_ROT);
+                } else {
+                    System.arraycopy(anchorPoseScratch, 0, drawModel, mo, 16);
                 }
+                Matrix.translateM(drawModel, mo, 0f, MODEL_LIFT_M, 0f);
+                drawModelValid[i] = true;
+            }
+            System.arraycopy(drawModel, mo, modelMatrix, 0, 16);
 
-                // ➜ APPLY visual multipliers BEFORE building S (so size really changes)
-                s *= puzzle ? PUZZLE_VISUAL_MULT : STAR_VISUAL_MULT;
-
-                float[] S = new float[16];
-                Matrix.setIdentityM(S, 0);
-                S[0] = s; S[5] = s; S[10] = s;
-                Matrix.multiplyMM(modelMatrix, 0, modelMatrix, 0, S, 0);
+            boolean puzzle = table.isPuzzle(row);
 
+            // 1) per-egg override if provided
+            float s = perEggScaleOrNeg1(pose[po + EggTable.POSE_SCALE]);
+            if (s < 0f) {
+                // 2) otherwise: auto-scale by current distance-to-camera (gentle, clamped)
                 Matrix.multiplyMM(mvMatrix, 0, viewMatrix, 0, modelMatrix, 0);
-                Matrix.multiplyMM(mvpMatrix, 0, projZoomed, 0, mvMatrix, 0); // <-- use zoomed projection
+                float dx = mvMatrix[12], dy = mvMatrix[13], dz = mvMatrix[14];
+                float distanceM = (float) Math.sqrt(dx*dx + dy*dy + dz*dz);
+                s = (distanceM > 0f) ? autoScaleForDistance(distanceM) : MODEL_SCALE_DEFAULT;
+            }
 
-                Mesh   mesh   = puzzle ? puzzleMesh    : eggMesh;
-                Shader shader = puzzle ? puzzleShader  : eggShader;
-                Texture tex   = puzzle ? puzzleTexture : eggTexture;
+            // ➜ APPLY visual multipliers BEFORE scaling (so size really changes)
+            s *= puzzle ? PUZZLE_VISUAL_MULT : STAR_VISUAL_MULT;
+            Matrix.scaleM(modelMatrix, 0, s, s, s);
 
-                if (mesh != null && shader != null && tex != null) {
-                    shader.setMat4("u_ModelViewProjection", mvpMatrix);
-                    shader.setTexture("u_Texture", tex);
-                    render.draw(mesh, shader, virtualSceneFramebuffer);
-                }
+            Matrix.multiplyMM(mvMatrix, 0, viewMatrix, 0, modelMatrix, 0);
+            Matrix.multiplyMM(mvpMatrix, 0, projZoomed, 0, mvMatrix, 0); // <-- use zoomed projection
+
+            // Origin inside the clip volume: on screen (keeps it in the anchor budget).
+            final float w = mvpMatrix[15];
+            if (w > 0f && Math.abs(mvpMatrix[12]) <= w && Math.abs(mvpMatrix[13]) <= w) snap.markViewed(i, frameMs);
+
+            Mesh   mesh   = puzzle ? puzzleMesh    : eggMesh;
+            Shader shader = puzzle ? puzzleShader  : eggShader;
+            Texture tex   = puzzle ? puzzleTexture : eggTexture;
+
+            if (mesh != null && shader != null && tex != null) {
+                shader.setMat4("u_ModelViewProjection", mvpMatrix);
+                shader.setTexture("u_Texture", tex);
+                render.draw(mesh, shader, virtualSceneFramebuffer);
             }
         }
         backgroundRenderer.drawVirtualScene(render, virtualSceneFramebuffer, Z_NEAR, Z_FAR);
@@ -800,10 +817,13 @@ public class GeospatialActivity extends AppCompatActivity
 
         final String msg;
         if (earth.getTrackingState() == TrackingState.TRACKING && pose != null) {
+            final AnchorManager.Snapshot snap = anchors.snapshot();
             msg = String.format(
                     Locale.US,
-                    "Earth: TRACKING ✓  lat=%.6f lon=%.6f  ±H=%.1fm  ±V=%.1fm  ±Head=%.1f°",
-                    pose.lat, pose.lng, pose.hAcc, pose.vAcc, pose.headingAcc);
+                    "Earth: TRACKING ✓  lat=%.6f lon=%.6f  ±H=%.1fm  ±V=%.1fm  ±Head=%.1f°\n"
+                            + "Anchors %d/%d  released=%d  re-anchored=%d",
+                    pose.lat, pose.lng, pose.hAcc, pose.vAcc, pose.headingAcc,
+                    snap.live, anchors.budget(), snap.evictions, snap.reacquired);
         } else if (earth.getTrackingState() == TrackingState.PAUSED) {
             int elapsed = (int) Math.max(0, (now - resumedAtMs) / 1000L);
             msg = String.format(Locale.US, "Earth: LOCALIZING… please wait (~5–15s). %ds", elapsed);
@@ -816,318 +836,41 @@ public class GeospatialActivity extends AppCompatActivity
         runOnUiThread(() -> { statusText.setText(msg); statusText.setVisibility(View.VISIBLE); });
     }
 
-    // ---------- Single-owner helper ----------
-    /** Insert/replace the only anchor for an egg id; detaches any previous one and keeps maps in sync. */
-    private void putUniqueAnchor(@NonNull String kind, @NonNull Anchor a, @NonNull EggEntry e) {
-        synchronized (anchorsLock) {
-            Anchor prev = anchorByEggId.get(e.id);
-            if (prev != null) {
-                try { prev.detach(); } catch (Throwable ignore) {}
-                anchorToEgg.remove(prev);
-            }
-            anchorByEggId.put(e.id, a);
-            anchorKindByEggId.put(e.id, kind);
-            anchorToEgg.put(a, e);
-            placedIds.add(e.id);
-        }
-    }
-
-    // ---------- CLOUD ----------
-    private void attemptResolveCloudAnchors() {
-        if (eggs.isEmpty() || session == null) return;
-
-        boolean startedAnyResolveThisTick = false;
-
-        for (EggEntry e : eggs) {
-            if (e == null || e.id == null) continue;
-
-            // Magnifier/puzzle anchors are GEO-only: never try Cloud
-            if (isPuzzle(e)) continue;
-
-            // If we already have a CLOUD anchor for this egg, skip entirely
-            synchronized (anchorsLock) {
-                String kind = anchorKindByEggId.get(e.id);
-                if ("CLOUD".equals(kind)) continue;
-            }
-
-            if (placedIds.contains(e.id) && !allowGeoFallbackIds.contains(e.id)) {
-                // If already placed as GEO but cloud preferred, we may still try to upgrade → do not continue here.
-                // We'll let it resolve and then replace below.
-            }
-
-            if (pendingCloudByEggId.containsKey(e.id)) continue;
-            if (!wantsCloud(e)) continue;
-
-            final String cloudId = bestCloudId(e);
-            Log.d(TAG, "Egg " + e.id + " CLOUD? cloudId=" + cloudId);
-
-            if (cloudId == null || cloudId.isEmpty()) {
-                if (e.geo != null) allowGeoFallbackIds.add(e.id);
-                continue;
-            }
-
-            if (isLikelyExpired(e.cloudHostedAt, e.cloudTtlDays)) {
-                Log.w(TAG, "Cloud likely expired for " + e.id + " — enabling GEO fallback.");
-                if (e.geo != null) allowGeoFallbackIds.add(e.id);
-                continue;
-            }
-
-            try {
-                Anchor resolving = session.resolveCloudAnchor(cloudId);
-                pendingCloudByEggId.put(e.id, new PendingCloud(resolving, e));
-                startedAnyResolveThisTick = true;
-                Log.d(TAG, "Resolving Cloud Anchor for " + e.id);
-            } catch (Throwable t) {
-                Log.w(TAG, "resolveCloudAnchor failed for " + e.id + " — enabling GEO fallback if possible.", t);
-                if (e.geo != null) allowGeoFallbackIds.add(e.id);
-            }
-        }
-
-        // Inform the user once that we’re loading anchors from the cloud
-        if (startedAnyResolveThisTick && !anchorLoadingHintShown) {
-            anchorLoadingHintShown = true;
-            runOnUiThread(() -> {
-                toast("Loading nearby anchors… please wait");
-                statusText.setText("Loading nearby anchors… please wait");
-                statusText.setVisibility(View.VISIBLE);
-            });
-        }
-
-        List<String> done = new ArrayList<>();
-        for (Map.Entry<String, PendingCloud> kv : pendingCloudByEggId.entrySet()) {
-            String eggId = kv.getKey();
-            PendingCloud pc = kv.getValue();
-            Anchor a = pc.a;
-
-            Anchor.CloudAnchorState st = a.getCloudAnchorState();
-            switch (st) {
-                case SUCCESS: {
-                    EggEntry ee = pc.e;
-                    putUniqueAnchor("CLOUD", a, ee); // replace any GEO, ensure single-owner
-                    done.add(eggId);
-                    Log.d(TAG, "Cloud reso" +
-                            "lve SUCCESS for " + eggId + " (installed as sole owner)");
-                    break;
-                }
-                case NONE:
-                case TASK_IN_PROGRESS:
-                    if (System.currentTimeMillis() - pc.startedAt > CLOUD_RESOLVE_FALLBACK_MS && pc.e.geo != null) {
-                        allowGeoFallbackIds.add(eggId); // show GEO placeholder now
-                    }
-                    break;
-                default:
-                    Log.w(TAG, "Cloud resolve error " + st + " for " + eggId + " — enabling GEO fallback if possible.");
-                    try { a.detach(); } catch (Throwable ignore) {}
-                    if (pc.e != null && pc.e.geo != null) allowGeoFallbackIds.add(eggId);
-                    done.add(eggId);
-                    break;
-            }
-        }
-        for (String id : done) pendingCloudByEggId.remove(id);
-    }
-
-    private static boolean isLikelyExpired(@Nullable Timestamp hostedAt, @Nullable Long ttlDays) {
-        if (hostedAt == null || ttlDays == null) return false;
-        long start = hostedAt.toDate().getTime();
-        long ttlMs = ttlDays * 24L * 60L * 60L * 1000L;
-        return System.currentTimeMillis() > (start + ttlMs);
-    }
-
-    // ---------- GEO ----------
-    private void placeGeoAnchorsExactly(@Nullable Earth earth, @Nullable PoseLite currentPose) {
-        if (earth == null || currentPose == null || eggs.isEmpty()) return;
+    /** Current catalog table (consistent with {@link #eggIndex}). */
+    private EggTable catalog() { return eggIndex.table(); }
 
-        final long now = System.currentTimeMillis();
-
-        for (EggEntry e : eggs) {
-            if (e == null || e.id == null) continue;
-
-            // If we already have any anchor for this egg, skip creating another
-            synchronized (anchorsLock) {
-                if (anchorByEggId.containsKey(e.id)) continue;
-            }
-
-            if (!allowsGeo(e)) continue;   // must allow GEO
-            if (e.geo == null) continue;   // must have coords
-
-            // 🔹1) Cloud-first: don't place GEO for CLOUD eggs unless fallback is allowed
-            if (wantsCloud(e) && !allowGeoFallbackIds.contains(e.id)) continue;
-
-            // 🔹2) Distance filter: only place anchors that are "near" the current camera
-            double dH = haversineMeters(
-                    currentPose.lat, currentPose.lng,
-                    e.geo.getLatitude(), e.geo.getLongitude());
-
-            if (dH > 40.0) {   // tweak 40.0 m as you like
-                continue;       // too far, skip this egg for now
-            }
-
-            // (keep your existing retry/backoff logic below this)
-            Long last = anchorAttemptAtMs.get(e.id);
-            if (last != null && (now - last) < ANCHOR_RETRY_MS) continue;
-            anchorAttemptAtMs.put(e.id, now);
-
-            final double lat = e.geo.getLatitude();
-            final double lng = e.geo.getLongitude();
-
-            float[] savedQ = getSavedLocalQuaternion(e);
-            float chosenYawDeg;
-            Double savedYawMaybe = getSavedLocalSurfaceYawDeg(e);
-            if (savedYawMaybe != null) {
-                chosenYawDeg = savedYawMaybe.floatValue();
-            } else if (e.heading != null) {
-                chosenYawDeg = e.heading.floatValue();
-            } else if (currentPose.headingAcc <= HEADING_MAX_ACC_DEG && !Double.isNaN(currentPose.heading)) {
-                chosenYawDeg = (float) currentPose.heading;
-            } else if (lastGoodYawDeg != null) {
-                chosenYawDeg = lastGoodYawDeg.floatValue();
-            } else {
-                chosenYawDeg = 0f;
-            }
-            final float[] q = (savedQ != null) ? savedQ : yawToQuaternion(chosenYawDeg);
-
-            try {
-                if (e.alt != null) {
-                    final double alt = e.alt + ALT_GLOBAL_OFFSET_M;
-                    Anchor geo = earth.createAnchor(lat, lng, alt, q[0], q[1], q[2], q[3]);
-
-                    // VERIFY before accepting
-                    if (!verifyAnchorNearTarget(earth, geo, e, 1.0)) {
-                        try { geo.detach(); } catch (Throwable ignore) {}
-                        Log.w(TAG, "Rejected GEOSPATIAL (exact alt) for " + e.id + " due to >1m error; will retry");
-                        continue;
-                    }
-
-                    putUniqueAnchor("GEO", geo, e);
-                    Log.d(TAG, "Placed GEOSPATIAL (exact alt) for " + e.id);
-                } else {
-                    final Double hatMaybe = getHeightAboveTerrain(e);
-                    final double latF = lat;
-                    final double lngF = lng;
-                    final float[] qF  = new float[]{q[0], q[1], q[2], q[3]};
-                    final EggEntry eggF = e;
-
-                    earth.resolveAnchorOnTerrainAsync(
-                            latF, lngF,
-                            (float) (currentPose.alt + ALT_GLOBAL_OFFSET_M),
-                            qF[0], qF[1], qF[2], qF[3],
-                            (terrainAnchor, state) -> {
-                                if (state == Anchor.TerrainAnchorState.SUCCESS) {
-                                    try {
-                                        double targetAlt;
-                                        GeospatialPose tPose = earth.getGeospatialPose(terrainAnchor.getPose());
-                                        if (tPose != null) {
-                                            double terrainAlt = tPose.getAltitude();
-                                            targetAlt = (hatMaybe != null)
-                                                    ? terrainAlt + hatMaybe
-                                                    : terrainAlt;
-                                        } else {
-                                            targetAlt = currentPose.alt + (hatMaybe != null ? hatMaybe : 0.0);
-                                        }
-
-                                        Anchor earthAnchor = earth.createAnchor(
-                                                latF, lngF, targetAlt, qF[0], qF[1], qF[2], qF[3]);
-
-                                        // VERIFY before accepting
-                                        if (!verifyAnchorNearTarget(earth, earthAnchor, eggF, 1.0)) {
-                                            try { earthAnchor.detach(); } catch (Throwable ignore) {}
-                                            Log.w(TAG, "Rejected TERRAIN anchor for " + eggF.id + " due to >1m error; will retry");
-                                            return;
-                                        }
-
-                                        putUniqueAnchor("GEO", earthAnchor, eggF);
-                                        Log.d(TAG, (hatMaybe != null ? "Placed TERRAIN+HAT " : "Placed TERRAIN ")
-                                                + "for " + eggF.id + " (alt=" + targetAlt + ")");
-                                    } catch (Throwable t) {
-                                        Log.w(TAG, "Terrain success but placement failed for " + eggF.id, t);
-                                    } finally {
-                                        if (terrainAnchor != null) try { terrainAnchor.detach(); } catch (Throwable ignore) {}
-                                    }
-                                } else {
-                                    Log.w(TAG, "Terrain " + state + " for " + eggF.id + "; will retry later.");
-                                }
-                            });
-                }
-            } catch (Throwable t) {
-                Log.w(TAG, "Anchor create failed for " + e.id, t);
-            }
-        }
-    }
-
-    /** Verify newly created anchor; WARN if far, but do not reject placement. */
-    private boolean verifyAnchorNearTarget(Earth earth, Anchor a, EggEntry e, double tolMeters){
-        try {
-            if (e == null || e.geo == null || a == null) return true; // don't block
-            GeospatialPose gp = earth.getGeospatialPose(a.getPose());
-            if (gp == null || Double.isNaN(gp.getLatitude()) || Double.isNaN(gp.getLongitude())) return true;
-            double err = haversineMeters(gp.getLatitude(), gp.getLongitude(),
-                    e.geo.getLatitude(), e.geo.getLongitude());
-            if (err > tolMeters) {
-                Log.w(TAG, String.format(Locale.US,
-                        "Anchor %.2fm from target for %s (tolerating, will monitor/relocalize).",
-                        err, e.id));
-            }
-            return true; // never block placement
-        } catch (Throwable t){
-            Log.w(TAG, "verifyAnchorNearTarget failed (tolerating)", t);
-            return true;
-        }
-    }
-
-    private void maybeRelocalizeDriftedAnchors(Earth earth) {
-        final long now = System.currentTimeMillis();
-        List<Anchor> toRemove = new ArrayList<>();
-        List<EggEntry> toRecreate = new ArrayList<>();
-
-        synchronized (anchorsLock) {
-            for (Map.Entry<Anchor, EggEntry> kv : anchorToEgg.entrySet()) {
-                Anchor a = kv.getKey();
-                EggEntry e = kv.getValue();
-                if (e == null || e.geo == null) continue;
-
-                GeospatialPose ap = earth.getGeospatialPose(a.getPose());
-                if (ap == null) continue;
-
-                double err = haversineMeters(ap.getLatitude(), ap.getLongitude(), e.geo.getLatitude(), e.geo.getLongitude());
-                if (err > RELOCALIZE_IF_ERROR_M) {
-                    long last = lastRelocAttemptAt.getOrDefault(e.id, 0L);
-                    if (now - last >= RELOCALIZE_BACKOFF_MS) {
-                        lastRelocAttemptAt.put(e.id, now);
-                        toRemove.add(a);
-                        toRecreate.add(e);
-                    }
-                }
-            }
-        }
-
-        // Detach and clean up single-owner maps
-        for (Anchor a : toRemove) { try { a.detach(); } catch (Throwable ignore) {} }
-        for (EggEntry e : toRecreate) {
-            synchronized (anchorsLock) {
-                Anchor prev = anchorByEggId.remove(e.id);
-                anchorKindByEggId.remove(e.id);
-                if (prev != null) anchorToEgg.remove(prev);
-                placedIds.remove(e.id);
-            }
+    /** GL thread. New snapshot: slots may now hold other anchors / rows, so drop cached models. */
+    private void prepareDrawCaches(AnchorManager.Snapshot snap) {
+        if (snap == drawSnapshot) return;
+        drawSnapshot = snap;
+        if (drawModelValid.length < snap.count) {
+            int cap = Math.max(snap.count, drawModelValid.length * 2);
+            drawPose = new float[cap * 16];
+            drawModel = new float[cap * 16];
+            drawModelValid = new boolean[cap];
+        } else {
+            Arrays.fill(drawModelValid, false);
         }
     }
 
     // ---------- proximity nudge (in-session) ----------
     private void checkNearbyNudges(PoseLite cam) {
-        if (eggs.isEmpty()) return;
+        final EggSpatialIndex index = eggIndex;
+        if (index.size() == 0) return;
+        final EggTable table = index.table();
 
-        double camLat = cam.lat;
-        double camLng = cam.lng;
         double camAlt = cam.alt;
 
-        for (EggEntry e : eggs) {
-            if (e == null || e.id == null || e.geo == null) continue;
-            if (nearbyNotified.contains(e.id)) continue;
+        index.withinRadius(cam.lat, cam.lng, NEARBY_RADIUS_M, nearbyRows);
+        for (int i = 0; i < nearbyRows.size(); i++) {
+            final int row = nearbyRows.get(i);
+            if (nearbyNotified.contains(table.id[row])) continue;
 
-            double dH = haversineMeters(camLat, camLng, e.geo.getLatitude(), e.geo.getLongitude());
-            double dV = (e.alt != null) ? Math.abs(camAlt - (e.alt + ALT_GLOBAL_OFFSET_M)) : 0.0;
+            double dV = table.has(row, EggTable.FLAG_HAS_ALT)
+                    ? Math.abs(camAlt - (table.alt[row] + ALT_GLOBAL_OFFSET_M)) : 0.0;
 
-            if (dH <= NEARBY_RADIUS_M && dV <= NEARBY_ALT_TOL_M) {
+            if (dV <= NEARBY_ALT_TOL_M) {
+                EggIndexEntry e = table.entry(row);
                 nearbyNotified.add(e.id);
                 vibrate(NEARBY_VIBRATE_MS);
                 toast("Nearby: " + (e.title != null && !e.title.isEmpty() ? e.title : "an egg"));
@@ -1164,8 +907,7 @@ public class GeospatialActivity extends AppCompatActivity
         cam.getViewMatrix(viewMatrix, 0);
 
         // --- keep pick math consistent with the zoomed background ---
-        float[] projZoomed = new float[16];
-        applyZoomToProjection(projZoomed, projMatrix, userScaleMultiplier);
+        updateZoomedProjection();
 
         final float sx = tap.getX();
         final float sy = tap.getY();
@@ -1195,7 +937,7 @@ public class GeospatialActivity extends AppCompatActivity
         }
 
         if (best != null) {
-            final EggEntry hit = best.egg;
+            final EggIndexEntry hit = best.egg;
             vibrate(20);
             runOnUiThread(() -> {
                 if (!isFinishing() && !isDestroyed()) showStarOrPuzzle(hit);
@@ -1208,8 +950,8 @@ public class GeospatialActivity extends AppCompatActivity
     }
 
     private static class PickResult {
-        final Anchor anchor; final EggEntry egg; final float tAlong;
-        PickResult(Anchor a, EggEntry e, float t) { anchor = a; egg = e; tAlong = t; }
+        final Anchor anchor; final EggIndexEntry egg; final float tAlong;
+        PickResult(Anchor a, EggIndexEntry e, float t) { anchor = a; egg = e; tAlong = t; }
     }
 
     @Nullable
@@ -1237,54 +979,55 @@ public class GeospatialActivity extends AppCompatActivity
         PickResult best = null;
         float bestT = Float.MAX_VALUE;
 
-        synchronized (anchorsLock) {
-            if (anchorToEgg.isEmpty()) return null;
+        final AnchorManager.Snapshot snap = anchors.snapshot();
+        final EggTable table = snap.table;
+        if (snap.count == 0) return null;
 
-            for (Map.Entry<Anchor, EggEntry> entry : anchorToEgg.entrySet()) {
-                Anchor a = entry.getKey();
-                if (a.getTrackingState() != TrackingState.TRACKING) continue;
+        for (int i = 0; i < snap.count; i++) {
+            Anchor a = snap.anchor(i);
+            if (a.getTrackingState() != TrackingState.TRACKING) continue;
+            final int row = snap.row(i);
 
-                // Anchor center in world
-                float[] c = a.getPose().getTranslation();
+            // Anchor center in world
+            float[] c = a.getPose().getTranslation();
 
-                // Vector from ray origin to center
-                float[] v = {c[0]-o[0], c[1]-o[1], c[2]-o[2]};
-                float vd = dot3(v, d);            // distance along ray to closest approach
-                if (vd <= 0f) continue;           // behind the camera
-                float distanceMeters = len3(v);   // center distance
+            // Vector from ray origin to center
+            float[] v = {c[0]-o[0], c[1]-o[1], c[2]-o[2]};
+            float vd = dot3(v, d);            // distance along ray to closest approach
+            if (vd <= 0f) continue;           // behind the camera
+            float distanceMeters = len3(v);   // center distance
 
-                /// ---- SCALE-AWARE PICK RADIUS ----
-                boolean puzzle = isPuzzle(entry.getValue());
+            /// ---- SCALE-AWARE PICK RADIUS ----
+            boolean puzzle = table.isPuzzle(row);
 
 // Compute the rendered scale s for this anchor (same logic as draw)
-                float s = getPerEggScaleOrNeg1(entry.getValue());
-                if (s < 0f) {
-                    s = autoScaleForDistance(distanceMeters);
-                }
-                s *= puzzle ? PUZZLE_VISUAL_MULT : STAR_VISUAL_MULT;
+            float s = perEggScaleOrNeg1(table.pose[row * EggTable.POSE_STRIDE + EggTable.POSE_SCALE]);
+            if (s < 0f) {
+                s = autoScaleForDistance(distanceMeters);
+            }
+            s *= puzzle ? PUZZLE_VISUAL_MULT : STAR_VISUAL_MULT;
 
 // Use per-model unscaled radius
-                float baseR = puzzle ? PUZZLE_RADIUS_UNSCALED : STAR_RADIUS_UNSCALED;
-                float objectRadiusM = baseR * s + PICK_MARGIN_M;
+            float baseR = puzzle ? PUZZLE_RADIUS_UNSCALED : STAR_RADIUS_UNSCALED;
+            float objectRadiusM = baseR * s + PICK_MARGIN_M;
 
 // Assist radius (keep your distance-based assist)
-                float assistRadius = Math.min(
-                        PICK_MAX_RADIUS_M,
-                        PICK_BASE_RADIUS_M + PICK_RADIUS_PER_M * Math.min(40f, distanceMeters)
-                );
+            float assistRadius = Math.min(
+                    PICK_MAX_RADIUS_M,
+                    PICK_BASE_RADIUS_M + PICK_RADIUS_PER_M * Math.min(40f, distanceMeters)
+            );
 
 // Final radius = max(object radius, assist)
-                float radius = Math.max(objectRadiusM, assistRadius);
+            float radius = Math.max(objectRadiusM, assistRadius);
 
-                // Closest distance from ray to center
-                float[] projV = {d[0]*vd, d[1]*vd, d[2]*vd};
-                float[] perp  = {v[0]-projV[0], v[1]-projV[1], v[2]-projV[2]};
-                float dist = len3(perp);
+            // Closest distance from ray to center
+            float[] projV = {d[0]*vd, d[1]*vd, d[2]*vd};
+            float[] perp  = {v[0]-projV[0], v[1]-projV[1], v[2]-projV[2]};
+            float dist = len3(perp);
 
-                if (dist <= radius && vd < bestT) {
-                    bestT = vd;
-                    best = new PickResult(a, entry.getValue(), vd);
-                }
+            if (dist <= radius && vd < bestT) {
+                bestT = vd;
+                best = new PickResult(a, table.entry(row), vd);
             }
         }
         return best;
@@ -1298,207 +1041,112 @@ public class GeospatialActivity extends AppCompatActivity
     private static float len3(float[] a){ return (float)Math.sqrt(dot3(a,a)); }
 
     // ---------- media helpers ----------
-    @Nullable
-    private String normalizeUrlOrPath(@Nullable String raw) {
-        if (raw == null) return null;
-        String s = raw.trim();
-        if (s.isEmpty()) return null;
-        if (s.startsWith("\"") && s.endsWith("\"") && s.length() > 1) {
-            s = s.substring(1, s.length() - 1).trim();
-        }
-        if (s.startsWith("https://firebasestorage.googleapis.com/v0/") && !s.contains("alt=media")) {
-            s = s + (s.contains("?") ? "&" : "?") + "alt=media";
-        }
-        return s;
-    }
-
-    private void prewarmAssets(List<EggEntry> list) {
-        for (EggEntry e : list) {
-            if (e == null || e.id == null) continue;
-
-            String img = normalizeUrlOrPath(e.firstImageOrUrl());
-            if (img != null) {
-                if (img.startsWith("http")) {
-                    Uri uri = Uri.parse(img);
-                    imageUrlCache.put(e.id, uri);
-                    Glide.with(getApplicationContext())
-                            .load(uri)
-                            .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
-                            .timeout(20_000)
-                            .preload();
-                } else {
-                    try {
-                        StorageReference ref = img.startsWith("gs://")
-                                ? FirebaseStorage.getInstance().getReferenceFromUrl(img)
-                                : FirebaseStorage.getInstance().getReference().child(img);
-                        ref.getDownloadUrl().addOnSuccessListener(uri -> {
-                            imageUrlCache.put(e.id, uri);
-                            Glide.with(getApplicationContext())
-                                    .load(uri) // ensure load precedes diskCacheStrategy
-                                    .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
-                                    .timeout(20_000)
-                                    .preload();
-                        });
-                    } catch (Throwable t) {
-                        Log.w(TAG, "Image prewarm error for " + e.id + " (" + img + ")", t);
-                    }
-                }
-            }
 
-            String au = normalizeUrlOrPath(e.audioUrl != null ? e.audioUrl : e.audioPath);
-            if (au != null) {
-                if (au.startsWith("http")) {
-                    audioUrlCache.put(e.id, Uri.parse(au));
-                } else {
-                    try {
-                        StorageReference ref = au.startsWith("gs://")
-                                ? FirebaseStorage.getInstance().getReferenceFromUrl(au)
-                                : FirebaseStorage.getInstance().getReference().child(au);
-                        ref.getDownloadUrl().addOnSuccessListener(uri -> audioUrlCache.put(e.id, uri));
-                    } catch (Throwable t) {
-                        Log.w(TAG, "Audio prewarm error for " + e.id + " (" + au + ")", t);
-                    }
-                }
-            }
+    /**
+     * Resolve image/audio refs of the {@link #PREWARM_MAX_EGGS} eggs nearest the user ahead of time,
+     * so opening their dialog never waits on getDownloadUrl. Bounded so the tail of a big catalog
+     * can't evict the near refs from the resolver's LRU; refs already resolved are only touched
+     * (keeping them recent), and just the nearest {@link #PREWARM_PRELOAD_IMAGES} images go to
+     * Glide. Prioritized by distance in the resolver's shared queue so startup prefetch doesn't
+     * compete with VPS localization and cloud-anchor resolves. Any thread; preloads start on main.
+     */
+    private void prewarmAssets(EggTable table) {
+        final double lat, lng;
+        PoseLite cam = lastCamPose;
+        Location fix = lastFix;
+        if (cam != null) { lat = cam.lat; lng = cam.lng; }
+        else if (fix != null) { lat = fix.getLatitude(); lng = fix.getLongitude(); }
+        else return; // "nearest" means nothing yet; the next page/delta after a fix will do it
+
+        // float distance bits << 32 | row: sorts nearest first, no boxing.
+        long[] ranked = new long[table.size];
+        int n = 0;
+        for (int row = 0; row < table.size; row++) {
+            if (!table.has(row, EggTable.FLAG_HAS_GEO)) continue;
+            float d = (float) haversineMeters(lat, lng, table.lat[row], table.lng[row]);
+            ranked[n++] = ((long) Float.floatToIntBits(d) << 32) | row;
         }
-    }
-
-    private void loadIntoImageView(@Nullable String urlOrPath, ImageView target, @Nullable String eggId) {
-        if (target == null) return;
-
-        Uri cached = (eggId != null) ? imageUrlCache.get(eggId) : null;
-        if (cached != null) {
-            Glide.with(this)
-                    .load(cached)
-                    .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
-                    .timeout(20_000)
-                    .placeholder(android.R.drawable.ic_menu_report_image)
-                    .error(android.R.drawable.ic_menu_report_image)
-                    .dontAnimate()
-                    .into(target);
-            return;
+        Arrays.sort(ranked, 0, n);
+
+        final List<String> refs = new ArrayList<>();
+        final List<Boolean> preload = new ArrayList<>();
+        final List<Double> prio = new ArrayList<>();
+        for (int k = 0; k < Math.min(n, PREWARM_MAX_EGGS); k++) {
+            EggIndexEntry e = table.entry((int) ranked[k]);
+            double d = Float.intBitsToFloat((int) (ranked[k] >>> 32));
+            String img = MediaResolver.normalize(e.imageRef);
+            if (img != null && media.peek(img) == null) { refs.add(img); preload.add(k < PREWARM_PRELOAD_IMAGES); prio.add(d); }
+            String au = MediaResolver.normalize(e.audioRef);
+            if (au != null && media.peek(au) == null) { refs.add(au); preload.add(false); prio.add(d); }
         }
+        if (refs.isEmpty()) return;
 
-        String s = normalizeUrlOrPath(urlOrPath);
-        if (s == null) { target.setImageResource(android.R.color.transparent); return; }
-
-        if (s.startsWith("http")) {
-            Uri uri = Uri.parse(s);
-            if (eggId != null) imageUrlCache.put(eggId, uri);
-            Glide.with(this)
+        final double[] priorities = new double[prio.size()];
+        for (int k = 0; k < priorities.length; k++) priorities[k] = prio.get(k);
+        media.resolveAll(refs, priorities, (i, uri) -> {
+            if (uri == null || !preload.get(i) || isFinishing()) return;
+            Glide.with(getApplicationContext())
                     .load(uri)
                     .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
                     .timeout(20_000)
-                    .placeholder(android.R.drawable.ic_menu_report_image)
-                    .error(android.R.drawable.ic_menu_report_image)
-                    .dontAnimate()
-                    .into(target);
-            return;
-        }
-
-        try {
-            StorageReference ref = s.startsWith("gs://")
-                    ? FirebaseStorage.getInstance().getReferenceFromUrl(s)
-                    : FirebaseStorage.getInstance().getReference().child(s);
-            ref.getDownloadUrl()
-                    .addOnSuccessListener(uri -> {
-                        if (eggId != null) imageUrlCache.put(eggId, uri);
-                        Glide.with(this)
-                                .load(uri)
-                                .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
-                                .timeout(20_000)
-                                .placeholder(android.R.drawable.ic_menu_report_image)
-                                .error(android.R.drawable.ic_menu_report_image)
-                                .dontAnimate()
-                                .into(target);
-                    })
-                    .addOnFailureListener(err -> target.setImageResource(android.R.color.transparent));
-        } catch (Throwable t) {
-            Log.w(TAG, "Image resolve failed: " + s, t);
-            target.setImageResource(android.R.color.transparent);
-        }
+                    .preload();
+        }).addOnSuccessListener(uris -> Log.d(TAG, "Prewarmed " + refs.size() + " media refs; " + media.stats()));
     }
 
-    private interface UriCallback { void accept(Uri uri); }
-
-    private void resolveToStreamUri(@Nullable String urlOrPath,
-                                    @Nullable String eggId,
-                                    UriCallback callback) {
-        if (callback == null) return;
+    private void loadIntoImageView(@Nullable String urlOrPath, ImageView target) {
+        if (target == null) return;
 
-        if (eggId != null) {
-            Uri cached = audioUrlCache.get(eggId);
-            if (cached != null) { callback.accept(cached); return; }
-        }
+        if (MediaResolver.normalize(urlOrPath) == null) { target.setImageResource(android.R.color.transparent); return; }
 
-        String s = normalizeUrlOrPath(urlOrPath);
-        if (s == null) { Log.w(TAG, "resolveToStreamUri: empty/null"); return; }
+        Uri cached = media.peek(urlOrPath);
+        if (cached != null) { glideInto(cached, target); return; }
 
-        if (s.startsWith("http")) {
-            Uri uri = Uri.parse(s);
-            if (eggId != null) audioUrlCache.put(eggId, uri);
-            callback.accept(uri);
-            return;
-        }
+        media.resolve(urlOrPath)
+                .addOnSuccessListener(uri -> glideInto(uri, target))
+                .addOnFailureListener(err -> {
+                    Log.w(TAG, "Image resolve failed: " + urlOrPath, err);
+                    target.setImageResource(android.R.color.transparent);
+                });
+    }
 
-        try {
-            StorageReference ref = s.startsWith("gs://")
-                    ? FirebaseStorage.getInstance().getReferenceFromUrl(s)
-                    : FirebaseStorage.getInstance().getReference().child(s);
-
-            ref.getDownloadUrl()
-                    .addOnSuccessListener(uri -> {
-                        if (eggId != null) audioUrlCache.put(eggId, uri);
-                        callback.accept(uri);
-                    })
-                    .addOnFailureListener(err -> {
-                        Log.w(TAG, "Audio URL resolve failed: " + s, err);
-                        new android.os.Handler(getMainLooper()).postDelayed(() ->
-                                        ref.getDownloadUrl()
-                                                .addOnSuccessListener(uri -> {
-                                                    if (eggId != null) audioUrlCache.put(eggId, uri);
-                                                    callback.accept(uri);
-                                                })
-                                                .addOnFailureListener(e2 -> Log.w(TAG, "Audio resolve retry failed: " + s, e2))
-                                , 1000);
-                    });
-        } catch (Throwable t) {
-            Log.w(TAG, "Audio resolve error: " + s, t);
-        }
+    private void glideInto(Uri uri, ImageView target) {
+        Glide.with(this)
+                .load(uri)
+                .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
+                .timeout(20_000)
+                .placeholder(android.R.drawable.ic_menu_report_image)
+                .error(android.R.drawable.ic_menu_report_image)
+                .dontAnimate()
+                .into(target);
     }
 
-    private static String safe(@Nullable String s){ return s == null ? "" : s; }
+    private interface UriCallback { void accept(Uri uri); }
 
-    private static boolean typeHas(@Nullable String t, String key) {
-        return t != null && t.toUpperCase(Locale.US).contains(key);
+    private void resolveToStreamUri(@Nullable String urlOrPath, UriCallback callback) {
+        if (callback == null) return;
+        if (MediaResolver.normalize(urlOrPath) == null) { Log.w(TAG, "resolveToStreamUri: empty/null"); return; }
+
+        media.resolve(urlOrPath)
+                .addOnSuccessListener(callback::accept)
+                .addOnFailureListener(err -> {
+                    Log.w(TAG, "Audio URL resolve failed: " + urlOrPath, err);
+                    new android.os.Handler(getMainLooper()).postDelayed(() ->
+                                    media.resolve(urlOrPath)
+                                            .addOnSuccessListener(callback::accept)
+                                            .addOnFailureListener(e2 -> Log.w(TAG, "Audio resolve retry failed: " + urlOrPath, e2))
+                            , 1000);
+                });
     }
-    private boolean isPuzzle(@Nullable EggEntry e) {
-        if (e == null) return false;
-        if (typeHas(e.anchorType, "GEO_PUZZLE")) return true;
 
-        try {
-            Map<?,?> m = tryReadMetaMap(e);
-            Object v = (m != null) ? m.get("model") : null;
-            if (v instanceof String && "puzzle".equalsIgnoreCase((String) v)) return true;
-        } catch (Throwable ignore) {}
+    private static String safe(@Nullable String s){ return s == null ? "" : s; }
 
-        return false;
-    }
-    private static boolean wantsCloud(EggEntry e) {
-        return typeHas(e.anchorType, "CLOUD");
-    }
-    private static boolean allowsGeo(EggEntry e) {
-        // allow GEO if the type mentions GEO, or if we have coords at all
-        return typeHas(e.anchorType, "GEO") || e.geo != null;
+    private boolean isPuzzle(@Nullable EggIndexEntry e) {
+        return e != null && e.isPuzzle();
     }
 
     /** Return a per-egg scale if present and sane, else -1 to indicate "no override". */
-    private float getPerEggScaleOrNeg1(EggEntry e) {
-        Float eggScaleOverride = getEggScale(e);
-        if (eggScaleOverride != null && eggScaleOverride > 0f) {
-            return Math.min(eggScaleOverride, MODEL_SCALE_MAX);
-        }
-        return -1f;
+    private float perEggScaleOrNeg1(float scaleOverride) {
+        return scaleOverride > 0f ? Math.min(scaleOverride, MODEL_SCALE_MAX) : -1f;
     }
 
     /** Compute a nice-looking scale based on distance (meters), clamped to sane limits. */
@@ -1510,12 +1158,6 @@ public class GeospatialActivity extends AppCompatActivity
         return s;
     }
 
-    private static float[] yawToQuaternion(float yawDeg) {
-        float r = (float) Math.toRadians(yawDeg);
-        float s = (float) Math.sin(r * 0.5f), c = (float) Math.cos(r * 0.5f);
-        return new float[]{0f, s, 0f, c};
-    }
-
     private void vibrate(long ms) {
         try {
             if (Build.VERSION.SDK_INT >= 31) {
@@ -1543,7 +1185,9 @@ public class GeospatialActivity extends AppCompatActivity
     }
 
     // ---------- dialogs ----------
-    private void showEggDialog(EggEntry egg) {
+    private void showEggDialog(EggDetails egg) {
+        collections.markCollected(egg.id);
+
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         View v = getLayoutInflater().inflate(R.layout.dialog_egg, null);
         builder.setView(v);
@@ -1566,24 +1210,9 @@ public class GeospatialActivity extends AppCompatActivity
 
         if (img != null && !img.trim().isEmpty()) {
             btnViewImage.setVisibility(View.VISIBLE);
-            Uri cached = (egg.id != null) ? imageUrlCache.get(egg.id) : null;
-            if (cached != null) imageToShow[0] = cached;
-            else {
-                String s = normalizeUrlOrPath(img);
-                if (s != null) {
-                    if (s.startsWith("http")) imageToShow[0] = Uri.parse(s);
-                    else {
-                        try {
-                            StorageReference ref = s.startsWith("gs://")
-                                    ? FirebaseStorage.getInstance().getReferenceFromUrl(s)
-                                    : FirebaseStorage.getInstance().getReference().child(s);
-                            ref.getDownloadUrl().addOnSuccessListener(uri -> {
-                                if (egg.id != null) imageUrlCache.put(egg.id, uri);
-                                imageToShow[0] = uri;
-                            });
-                        } catch (Throwable ignore) {}
-                    }
-                }
+            imageToShow[0] = media.peek(img);
+            if (imageToShow[0] == null) {
+                media.resolve(img).addOnSuccessListener(uri -> imageToShow[0] = uri);
             }
             btnViewImage.setOnClickListener(vw -> {
                 if (imageToShow[0] != null) {
@@ -1597,7 +1226,7 @@ public class GeospatialActivity extends AppCompatActivity
             btnViewImage.setVisibility(View.GONE);
         }
 
-        String audio = (egg.audioUrl != null && !egg.audioUrl.isEmpty()) ? egg.audioUrl : egg.audioPath;
+        String audio = egg.primaryAudio();
         final MediaPlayer[] mp = new MediaPlayer[1];
         final boolean[] userSeeking = { false };
         final android.os.Handler handler = new android.os.Handler(getMainLooper());
@@ -1659,7 +1288,7 @@ public class GeospatialActivity extends AppCompatActivity
                 audioSec.findViewById(R.id.audioLoading).setVisibility(View.VISIBLE);
                 btnPlayPause.setEnabled(false);
 
-                resolveToStreamUri(audio, egg.id, uri -> runOnUiThread(() -> {
+                resolveToStreamUri(audio, uri -> runOnUiThread(() -> {
                     try {
                         MediaPlayer p = new MediaPlayer();
                         if (Build.VERSION.SDK_INT >= 21) {
@@ -1724,23 +1353,21 @@ public class GeospatialActivity extends AppCompatActivity
         int s = totalSec % 60;
         return m + ":" + (s < 10 ? "0" + s : String.valueOf(s));
     }
-    private void showStarOrPuzzle(EggEntry egg) {
+    private void showStarOrPuzzle(EggIndexEntry egg) {
         if (isPuzzle(egg)) {
             showPuzzleClueDialog(egg);
             return;
         }
-        String kind;
-        synchronized (anchorsLock) { kind = anchorKindByEggId.get(egg.id); }
-        if ("CLOUD".equals(kind)) {
+        if (anchors.snapshot().stateOf(egg.id) == AnchorManager.State.PLACED_CLOUD) {
             // Cloud is accurately placed → skip quiz
-            showEggDialog(egg);
+            openEggDialog(egg);
         } else {
             // GEO placeholder → keep your existing quiz gate (if any)
             showEggOrQuiz(egg);
         }
     }
 
-    private void showPuzzleClueDialog(EggEntry egg) {
+    private void showPuzzleClueDialog(EggIndexEntry egg) {
         // Simple programmatic layout; no new XML required
         android.widget.LinearLayout root = new android.widget.LinearLayout(this);
         root.setOrientation(android.widget.LinearLayout.VERTICAL);
@@ -1762,14 +1389,14 @@ public class GeospatialActivity extends AppCompatActivity
         root.addView(hint);
 
         // Load the first image that was made mandatory in Marker app
-        loadIntoImageView(egg.firstImageOrUrl(), img, egg.id);
+        loadIntoImageView(egg.imageRef, img);
 
         new androidx.appcompat.app.AlertDialog.Builder(this)
                 .setTitle(egg.title != null && !egg.title.isEmpty() ? egg.title : "Puzzle")
                 .setView(root)
                 .setPositiveButton("Got It", (d, w) -> {
                     // Reveal full details (title + desc + media)
-                    showEggDialog(egg);
+                    openEggDialog(egg);
                 })
                 .setNegativeButton("I Give Up", (d, w) -> {
                     // Take back: just close the dialog, return to AR view
@@ -1779,30 +1406,40 @@ public class GeospatialActivity extends AppCompatActivity
                 .show();
     }
 
-    private void showEggOrQuiz(EggEntry egg) {
-        if (egg == null) return;
-        if (egg.hasQuiz()) {
-            EggEntry.QuizQuestion q = egg.quiz.get(0);
-            showQuizDialog(q, () -> refreshEggThenShow(egg));
-        } else {
-            refreshEggThenShow(egg);
-        }
+    private void showEggOrQuiz(EggIndexEntry egg) {
+        withDetails(egg, details -> {
+            if (details.hasQuiz()) {
+                showQuizDialog(details.quiz.get(0), () -> showEggDialog(details));
+            } else {
+                showEggDialog(details);
+            }
+        });
     }
 
-    private void refreshEggThenShow(EggEntry stale) {
-        if (stale == null || stale.id == null) { return; }
-        repository.fetchEggById(stale.id, /*forceServer=*/true)
-                .addOnSuccessListener(updated -> {
-                    EggEntry toUse = (updated != null ? updated : stale);
-                    java.util.List<EggEntry> one = new java.util.ArrayList<>();
-                    one.add(toUse);
-                    prewarmAssets(one);
-                    showEggDialog(toUse);
-                })
-                .addOnFailureListener(err -> showEggDialog(stale));
+    private void openEggDialog(EggIndexEntry egg) {
+        withDetails(egg, this::showEggDialog);
+    }
+
+    private interface DetailsCallback { void accept(EggDetails details); }
+
+    /**
+     * Load the tap-time half of an egg. While the delta listener is live the repository's cache is
+     * kept current, so a hit needs no round trip; otherwise re-read from the server and fall back
+     * to whatever copy is available offline.
+     */
+    private void withDetails(@Nullable EggIndexEntry egg, DetailsCallback then) {
+        if (egg == null || egg.id == null) return;
+        final boolean live = eggsListener != null;
+        repository.fetchEggDetails(egg, /*forceServer=*/!live)
+                .continueWithTask(t -> t.isSuccessful() || live ? t : repository.fetchEggDetails(egg, false))
+                .addOnSuccessListener(this, then::accept)
+                .addOnFailureListener(this, err -> {
+                    Log.w(TAG, "Details load failed for " + egg.id, err);
+                    toast("Couldn't load this egg. Check your connection.");
+                });
     }
 
-    private void postNearbyNotification(EggEntry e) {
+    private void postNearbyNotification(EggIndexEntry e) {
         try {
             Intent intent = new Intent(this, GeospatialActivity.class);
             intent.putExtra("openEggId", e.id);
@@ -1837,167 +1474,188 @@ public class GeospatialActivity extends AppCompatActivity
         }
     }
 
-    // ---------- facade orientation & per-egg overrides ----------
-    @Nullable
-    private float[] getSavedLocalQuaternion(EggEntry e) {
-        try {
-            float[] q = tryReadQuaternionXYZW(e);
-            if (q == null) {
-                Map<?,?> m = tryReadMetaMap(e);
-                if (m != null) q = tryReadQuaternionXYZW(m);
-            }
-            return q;
-        } catch (Throwable t) { Log.w(TAG, "getSavedLocalQuaternion: reflect read failed", t); return null; }
+    // ---------- privacy dialog ----------
+    @Override public void onDialogPositiveClick(DialogFragment dialog) {
+        if (!sharedPreferences.edit().putBoolean(ALLOW_GEOSPATIAL_ACCESS_KEY, true).commit()) {
+            throw new AssertionError("Could not save preference");
+        }
+        createSession();
     }
 
-    @Nullable
-    private Double getSavedLocalSurfaceYawDeg(EggEntry e) {
-        try {
-            float[] q = tryReadQuaternionXYZW(e);
-            if (q == null) {
-                Map<?,?> m = tryReadMetaMap(e);
-                if (m != null) q = tryReadQuaternionXYZW(m);
-            }
-            if (q == null) return null;
-            return (double) yawDegFromQuaternionYUp(q[0], q[1], q[2], q[3]);
-        } catch (Throwable t) { Log.w(TAG, "getSavedLocalSurfaceYawDeg: reflect read failed", t); return null; }
+    private void showPrivacyNoticeDialog() {
+        DialogFragment dialog = PrivacyNoticeDialogFragment.createDialog();
+        dialog.show(getSupportFragmentManager(), PrivacyNoticeDialogFragment.class.getName());
     }
 
-    // UPDATED: clamp/validate heightAboveTerrain to avoid absurd values (e.g., –80 m)
-    @Nullable
-    private Double getHeightAboveTerrain(EggEntry e) {
-        try {
-            Float f = tryReadFloat(e, "heightAboveTerrain", "hat", "heightOverTerrain");
-            if (f == null) {
-                Map<?,?> m = tryReadMetaMap(e);
-                if (m != null) f = tryReadFloat(m, "heightAboveTerrain", "hat", "heightOverTerrain");
-            }
-            if (f == null) return null;
-            double val = f.doubleValue();
-            // Accept small offsets only; ignore if out of a sane range.
-            if (val < -5.0 || val > 15.0) {
-                Log.w(TAG, "Ignoring HAT=" + val + "m (out of range)");
-                return null;
-            }
-            return val;
-        } catch (Throwable t) {
-            Log.w(TAG, "getHeightAboveTerrain: reflect read failed", t);
-            return null;
-        }
+    // ---------- catalog ----------
+    /**
+     * Eggs around the last known fix (geohash radius query), or the whole catalog with no
+     * fix/permission, before the geohash migration is flagged done, or if the nearby query finds
+     * nothing (or fails).
+     */
+    @SuppressLint("MissingPermission")
+    private void loadCatalog() {
+        Task<Location> fixTask = LocationPermissionHelper.hasFineLocationPermission(this)
+                ? LocationServices.getFusedLocationProviderClient(this).getLastLocation()
+                : Tasks.forResult(null);
+        fixTask.addOnCompleteListener(t -> {
+            Location here = t.isSuccessful() ? t.getResult() : null;
+            if (here == null) { streamCatalog(); return; }
+            this.lastFix = here;
+            repository.isGeohashIndexed().addOnCompleteListener(ready -> {
+                if (!Boolean.TRUE.equals(ready.getResult())) { streamCatalog(); return; }
+                catalogCenter = here;
+                repository.fetchEggsNear(here.getLatitude(), here.getLongitude(), EggRepository.NEARBY_CATALOG_RADIUS_M)
+                        .addOnSuccessListener(list -> {
+                            if (list.isEmpty()) streamCatalog(); else onCatalogLoaded(list);
+                        })
+                        .addOnFailureListener(err -> {
+                            Log.w(TAG, "Nearby egg query failed; loading the whole catalog", err);
+                            streamCatalog();
+                        });
+            });
+        });
     }
 
-    @Nullable
-    private Float getEggScale(EggEntry e) {
-        try {
-            Float f = tryReadFloat(e, "scale", "modelScale");
-            if (f == null) {
-                Map<?,?> m = tryReadMetaMap(e);
-                if (m != null) f = tryReadFloat(m, "scale", "modelScale");
-            }
-            return f;
-        } catch (Throwable t) { Log.w(TAG, "getScale read failed", t); return null; }
+    /** Page through the collection so anchors can start placing before the tail arrives. */
+    private void streamCatalog() {
+        catalogCenter = null;
+        final Set<String> seen = new HashSet<>();
+        repository.streamEggs(CATALOG_PAGE_SIZE, page -> {
+                    for (EggIndexEntry e : page) seen.add(e.id);
+                    applyCatalogChanges(page, Collections.emptyList());
+                })
+                .addOnSuccessListener(n ->
+                        applyCatalogChanges(Collections.emptyList(), Collections.emptyList(), seen, this::onCatalogSettled))
+                .addOnFailureListener(this::onCatalogFailed);
     }
 
-    private float[] getEggEulerDeg(EggEntry e) {
-        float rx = MODEL_ROT_X_DEG, ry = MODEL_ROT_Y_DEG, rz = MODEL_ROT_Z_DEG;
-        try {
-            Map<?,?> m = tryReadMetaMap(e);
-            if (m != null) {
-                Float _rx = tryReadFloat(m, "rotX", "modelRotX");
-                Float _ry = tryReadFloat(m, "rotY", "modelRotY");
-                Float _rz = tryReadFloat(m, "modelRotZ", "rotZ");
-                if (_rx != null) rx = _rx;
-                if (_ry != null) ry = _ry;
-                if (_rz != null) rz = _rz;
-            }
-        } catch (Throwable t) { Log.w(TAG, "getEulerDeg read failed", t); }
-        return new float[]{rx, ry, rz};
+    private void onCatalogLoaded(List<EggIndexEntry> list) {
+        Set<String> fresh = new HashSet<>();
+        for (EggIndexEntry e : list) if (e != null && e.id != null) fresh.add(e.id);
+        applyCatalogChanges(list, Collections.emptyList(), fresh, this::onCatalogSettled);
     }
 
-    @Nullable
-    private Map<?,?> tryReadMetaMap(Object e) {
-        try {
-            Field f1 = e.getClass().getDeclaredField("meta");
-            f1.setAccessible(true);
-            Object v = f1.get(e);
-            if (v instanceof Map) return (Map<?, ?>) v;
-        } catch (Throwable ignore) {}
-        try {
-            Field f2 = e.getClass().getDeclaredField("extras");
-            f2.setAccessible(true);
-            Object v = f2.get(e);
-            if (v instanceof Map) return (Map<?, ?>) v;
-        } catch (Throwable ignore) {}
-        return null;
+    private void onCatalogFailed(Exception e) {
+        Log.e(TAG, "Failed to fetch eggs", e);
+        toast("Failed to load eggs");
+        // Still showing the snapshot: stream what changed since it was saved until the next load.
+        startDeltaStream();
     }
 
-    @Nullable
-    private float[] tryReadQuaternionXYZW(Object source) {
-        Float qx = tryReadFloat(source, "localQx", "localHitQx", "hitQx");
-        Float qy = tryReadFloat(source, "localQy", "localHitQy", "hitQy");
-        Float qz = tryReadFloat(source, "localQz", "localHitQz", "hitQz");
-        Float qw = tryReadFloat(source, "localQw", "localHitQw", "hitQw");
-        if (qx == null || qy == null || qz == null || qw == null) return null;
-        float x = qx, y = qy, z = qz, w = qw;
-        float len = (float) Math.sqrt(x*x + y*y + z*z + w*w);
-        if (len > 1e-6f) { x/=len; y/=len; z/=len; w/=len; }
-        return new float[]{x,y,z,w};
+    /** After a complete load: persist, (re)register geofences and switch to delta streaming. */
+    private void onCatalogSettled() {
+        snapshotStore.saveAsync(catalog().asList(), lastSyncCursor);
+        registerGeofences();
+        Log.d(TAG, "Fetched eggs: " + catalog().size);
+        toast("Eggs fetched: " + catalog().size);
+        startDeltaStream();
     }
 
-    @Nullable
-    private Float tryReadFloat(Object src, String... names) {
-        if (src == null) return null;
-        if (src instanceof Map) {
-            Map<?,?> m = (Map<?,?>) src;
-            for (String n : names) {
-                Object v = m.get(n);
-                Float f = castToFloat(v);
-                if (f != null) return f;
-            }
-            return null;
+    /** From here on, only changed documents are streamed, for the area of the last load. */
+    private void startDeltaStream() {
+        // Without a cursor (no egg carries updatedAt) there is nothing to stream from.
+        if (eggsListener == null && lastSyncCursor != null) {
+            eggsListener = repository.observeEggs(lastSyncCursor, catalogCenter,
+                    EggRepository.NEARBY_CATALOG_RADIUS_M, this::onCatalogDelta);
         }
-        for (String n : names) {
-            try {
-                Field f = src.getClass().getDeclaredField(n);
-                f.setAccessible(true);
-                Object v = f.get(src);
-                Float fv = castToFloat(v);
-                if (fv != null) return fv;
-            } catch (Throwable ignore) {}
-        }
-        return null;
     }
 
-    @Nullable
-    private Float castToFloat(Object v) {
-        if (v == null) return null;
-        if (v instanceof Float)  return (Float) v;
-        if (v instanceof Double) return ((Double) v).floatValue();
-        if (v instanceof Number) return ((Number) v).floatValue();
-        if (v instanceof String) {
-            try { return Float.parseFloat(((String) v).trim()); } catch (Exception ignore) {}
-        }
-        return null;
+    private void onCatalogDelta(EggRepository.EggDelta delta) {
+        applyCatalogChanges(delta.upserts(), delta.removedIds, null, () -> {
+            // First delta of a burst schedules the write; later ones ride along, so a steady
+            // stream still persists every CATALOG_PERSIST_DEBOUNCE_MS rather than never.
+            if (catalogDirty) return;
+            catalogDirty = true;
+            catalogHandler.postDelayed(persistCatalog, CATALOG_PERSIST_DEBOUNCE_MS);
+        });
     }
 
-    private static float yawDegFromQuaternionYUp(float x, float y, float z, float w) {
-        double siny_cosp = 2.0 * (w * y + x * z);
-        double cosy_cosp = 1.0 - 2.0 * (y * y + z * z);
-        double yawRad = Math.atan2(siny_cosp, cosy_cosp);
-        return (float) Math.toDegrees(yawRad);
+    /** Debounced tail of {@link #onCatalogDelta}: one snapshot write and geofence diff per window. */
+    private void persistCatalog() {
+        if (!catalogDirty) return;
+        catalogDirty = false;
+        snapshotStore.saveAsync(catalog().asList(), lastSyncCursor);
+        registerGeofences();
     }
 
-    // ---------- privacy dialog ----------
-    @Override public void onDialogPositiveClick(DialogFragment dialog) {
-        if (!sharedPreferences.edit().putBoolean(ALLOW_GEOSPATIAL_ACCESS_KEY, true).commit()) {
-            throw new AssertionError("Could not save preference");
-        }
-        createSession();
+    private void registerGeofences() {
+        // Register geofences so notifications work when the app is NOT open
+        maybeRequestBackgroundLocation();
+        submitGeofences();
     }
 
-    private void showPrivacyNoticeDialog() {
-        DialogFragment dialog = PrivacyNoticeDialogFragment.createDialog();
-        dialog.show(getSupportFragmentManager(), PrivacyNoticeDialogFragment.class.getName());
+    private void submitGeofences() {
+        final List<EggIndexEntry> snapshot = catalog().asList();
+        final Context app = getApplicationContext();
+        EggExecutors.IO.execute(() -> {
+            try {
+                new GeofenceManager(app).registerForEggs(snapshot);
+            } catch (Throwable t) {
+                Log.w(TAG, "Geofence register failed", t);
+            }
+        });
+    }
+
+    private void applyCatalogChanges(List<EggIndexEntry> upserts, List<String> removedIds) {
+        applyCatalogChanges(upserts, removedIds, null, null);
+    }
+
+    /**
+     * Upserts/removes eggs in the catalog and reconciles anchors (in {@link AnchorManager}): unchanged
+     * anchors stay put, only eggs whose placement inputs changed are re-placed.
+     *
+     * The new table and its spatial index are built on {@link #catalogWorker} (in call order), then
+     * published together on the main thread, followed by {@code thenOnMain}.
+     *
+     * @param keepOnly if non-null, eggs whose id is not in it are removed as well (full reload)
+     */
+    private void applyCatalogChanges(List<EggIndexEntry> upserts, List<String> removedIds,
+                                     @Nullable Set<String> keepOnly, @Nullable Runnable thenOnMain) {
+        catalogWorker.execute(() -> {
+            final Set<String> replace = new HashSet<>(removedIds);
+            final EggTable base = workingTable;
+            if (keepOnly != null) {
+                for (int row = 0; row < base.size; row++) if (!keepOnly.contains(base.id[row])) replace.add(base.id[row]);
+            }
+            if (upserts.isEmpty() && replace.isEmpty()) {
+                if (thenOnMain != null) EggExecutors.MAIN.execute(thenOnMain);
+                return;
+            }
+
+            final List<String> removed = new ArrayList<>(replace);
+            for (EggIndexEntry e : upserts) {
+                if (e == null || e.id == null) continue;
+                EggIndexEntry prev = replace.contains(e.id) ? null : base.get(e.id);
+                if (prev != null && placementChanged(prev, e)) replace.add(e.id);
+            }
+
+            final EggTable table = base.patch(upserts, removed);
+            final EggSpatialIndex index = EggSpatialIndex.build(table);
+            final Timestamp newest = EggRepository.maxUpdatedAt(upserts);
+            workingTable = table;
+            prewarmAssets(table);
+
+            EggExecutors.MAIN.execute(() -> {
+                eggIndex = index;
+                if (newest != null && (lastSyncCursor == null || newest.compareTo(lastSyncCursor) > 0)) {
+                    lastSyncCursor = newest;
+                }
+                anchors.onCatalog(index, replace);
+                surfaceView.queueEvent(() -> nearbyNotified.removeAll(replace));
+                if (thenOnMain != null) thenOnMain.run();
+            });
+        });
+    }
+
+    /** True if an edit moves the egg or changes how it must be anchored. */
+    private static boolean placementChanged(EggIndexEntry a, EggIndexEntry b) {
+        if (!Objects.equals(a.anchorType, b.anchorType)) return true;
+        if (!Objects.equals(a.bestCloudId(), b.bestCloudId())) return true;
+        if (!Objects.equals(a.alt, b.alt) || !Objects.equals(a.heading, b.heading)) return true;
+        if ((a.geo == null) != (b.geo == null)) return true;
+        return a.geo != null
+                && (a.geo.getLatitude() != b.geo.getLatitude() || a.geo.getLongitude() != b.geo.getLongitude());
     }
 
     // ---------- session ----------
@@ -2046,6 +1704,7 @@ public class GeospatialActivity extends AppCompatActivity
             }
             session.configure(config);
             session.resume();
+            anchors.resume();
         } catch (CameraNotAvailableException e) { message = "Camera not available"; exception = e; }
         catch (GooglePlayServicesLocationLibraryNotLinkedException e) { message = "Location library not linked"; exception = e; }
         catch (FineLocationPermissionNotGrantedException e) { message = "Location permission required"; exception = e; }
@@ -2129,16 +1788,6 @@ public class GeospatialActivity extends AppCompatActivity
                 .show();
     }
 
-    @Nullable
-    private String bestCloudId(@Nullable EggEntry e) {
-        if (e == null) return null;
-        try {
-            String viaMethod = e.bestCloudId();
-            if (viaMethod != null && !viaMethod.isEmpty()) return viaMethod;
-        } catch (Throwable ignore) { }
-        return (e.cloudId != null && !e.cloudId.isEmpty()) ? e.cloudId : null;
-    }
-
     // ---------- permission helper for background geofencing ----------
     private void maybeRequestBackgroundLocation() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
@@ -2155,25 +1804,30 @@ public class GeospatialActivity extends AppCompatActivity
             }
         }
     }
-    private boolean hasInternetConnection() {
-        try {
-            ConnectivityManager cm =
-                    (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-            if (cm == null) return false;
-
-            Network nw = cm.getActiveNetwork();
-            if (nw == null) return false;
-
-            NetworkCapabilities caps = cm.getNetworkCapabilities(nw);
-            return caps != null &&
-                    (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
-                            || caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)
-                            || caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET));
-        } catch (Exception e) {
-            return false;
+    /** Main thread. Offline is a degraded mode, not a stop: say so and keep the session running. */
+    private void onConnectivityChanged(boolean online) {
+        if (isFinishing() || isDestroyed()) return;
+        if (!online) {
+            if (!messageSnackbarHelper.isShowing()) {
+                messageSnackbarHelper.showMessage(this,
+                        "Offline — showing eggs already placed. Cloud anchors resume when you're back online.");
+                offlineNoticeShown = true;
+            }
+        } else if (offlineNoticeShown) {
+            messageSnackbarHelper.hide(this);
+            offlineNoticeShown = false;
         }
     }
 
+    /** Main thread. Inform the user once per resume that we’re loading anchors from the cloud. */
+    private void onCloudResolveStarted() {
+        if (anchorLoadingHintShown || isFinishing() || isDestroyed()) return;
+        anchorLoadingHintShown = true;
+        toast("Loading nearby anchors… please wait");
+        statusText.setText("Loading nearby anchors… please wait");
+        statusText.setVisibility(View.VISIBLE);
+    }
+
     // ------- helper to show the toast once per resume while localizing -------
     private void maybeShowOneTimeWaitToast() {
         long now = System.currentTimeMillis();
@@ -20,8 +20,7 @@ import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.load.engine.GlideException;
 import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.target.Target;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
+import com.example.virtualtourar.data.MediaResolver;
 
 /** Fullscreen image viewer that accepts http(s), gs://, or bucket paths. */
 public class ImageViewerDialogFragment extends DialogFragment {
@@ -65,28 +64,15 @@ public class ImageViewerDialogFragment extends DialogFragment {
 
         if (progress != null) progress.setVisibility(View.VISIBLE);
 
-        // Normalize common REST URL quirk (needs alt=media to stream the actual bytes)
-        String ref = normalizeUrlOrPath(rawRef);
-
-        if (ref.startsWith("http")) {
-            loadWithGlide(Uri.parse(ref), image, progress);
-        } else if (ref.startsWith("gs://")) {
-            // Resolve gs:// → https download URL
-            StorageReference sref = FirebaseStorage.getInstance().getReferenceFromUrl(ref);
-            sref.getDownloadUrl()
-                    .addOnSuccessListener(uri -> loadWithGlide(uri, image, progress))
-                    .addOnFailureListener(err -> {
-                        Log.w(TAG, "gs:// resolve failed: " + ref, err);
-                        if (isAdded()) dismissAllowingStateLoss();
-                    });
+        // http(s) loads directly; gs:// and bucket paths go through the shared resolver cache
+        Uri cached = MediaResolver.get().peek(rawRef);
+        if (cached != null) {
+            loadWithGlide(cached, image, progress);
         } else {
-            // Treat as bucket path ("eggs/.../photo.jpg" or "/eggs/.../photo.jpg")
-            String path = ref.startsWith("/") ? ref.substring(1) : ref;
-            StorageReference sref = FirebaseStorage.getInstance().getReference().child(path);
-            sref.getDownloadUrl()
+            MediaResolver.get().resolve(rawRef)
                     .addOnSuccessListener(uri -> loadWithGlide(uri, image, progress))
                     .addOnFailureListener(err -> {
-                        Log.w(TAG, "path resolve failed: " + path, err);
+                        Log.w(TAG, "resolve failed: " + rawRef, err);
                         if (isAdded()) dismissAllowingStateLoss();
                     });
         }
@@ -135,18 +121,4 @@ public class ImageViewerDialogFragment extends DialogFragment {
                 })
                 .into(target);
     }
-
-    /** Trim quotes and add alt=media for Firebase REST URLs. */
-    private static String normalizeUrlOrPath(@Nullable String raw) {
-        if (raw == null) return "";
-        String s = raw.trim();
-        if (s.startsWith("\"") && s.endsWith("\"") && s.length() > 1) {
-            s = s.substring(1, s.length() - 1).trim();
-        }
-        if (s.startsWith("https://firebasestorage.googleapis.com/v0/")
-                && !s.contains("alt=media")) {
-            s = s + (s.contains("?") ? "&" : "?") + "alt=media";
-        }
-        return s;
-    }
 }
@@ -0,0 +1,240 @@
+package com.example.virtualtourar.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Who collected what, kept out of the egg documents:
+ *
+ *   collections/{uid}                    { eggIds: [...], updatedAt }
+ *   eggs/{eggId}/collectShards/{0..N-1}  { count }
+ *
+ * The per-user record is the source of truth for "collected". The counter is only popularity;
+ * each collect bumps one random shard, so hunters collecting the same egg at an event don't
+ * contend on a single document.
+ *
+ * Collects are buffered briefly and committed as one WriteBatch. Until a batch has been handed
+ * to Firestore (whose write queue survives going offline and process death) the ids sit in a
+ * small pending set on disk; a rejected commit puts them back and retries with backoff. Ids the
+ * user record already holds are dropped before every commit, so a retry never counts twice.
+ */
+public final class CollectionRepository {
+    private static final String TAG = "CollectionRepository";
+
+    private static final String USERS = "collections";
+    private static final String FIELD_EGG_IDS = "eggIds";
+    private static final String SHARDS = "collectShards";
+    private static final String FIELD_COUNT = "count";
+    public static final int NUM_SHARDS = 10;
+
+    private static final String PREFS = "egg_collections";
+    private static final String KEY_PENDING = "pending";
+    /** Local set kept by older builds; folded into the pending queue once. */
+    private static final String LEGACY_PREFS = "GeospatialActivity";
+    private static final String LEGACY_KEY = "COLLECTED_EGGS";
+
+    private static final long FLUSH_DELAY_MS = 2_000;
+    private static final long RETRY_BASE_MS = 5_000;
+    private static final long RETRY_MAX_MS = 5 * 60_000;
+    /** One user-record write + one shard write per egg, under Firestore's 500 per batch. */
+    private static final int MAX_BATCH_EGGS = 400;
+
+    private static volatile CollectionRepository instance;
+
+    public static CollectionRepository get(@NonNull Context ctx) {
+        CollectionRepository r = instance;
+        if (r == null) {
+            synchronized (CollectionRepository.class) {
+                r = instance;
+                if (r == null) instance = r = new CollectionRepository(ctx.getApplicationContext());
+            }
+        }
+        return r;
+    }
+
+    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final SharedPreferences prefs;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final Runnable flushTask = this::flush;
+
+    private final Set<String> pending; // guarded by this
+    /** Ids already handed to Firestore or seen in the user record this process; guarded by this. */
+    private final Set<String> known = new HashSet<>();
+    private boolean flushing;          // guarded by this
+    private long retryDelayMs = RETRY_BASE_MS;
+
+    private CollectionRepository(Context app) {
+        prefs = app.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        pending = new LinkedHashSet<>(prefs.getStringSet(KEY_PENDING, Collections.emptySet()));
+
+        SharedPreferences legacy = app.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE);
+        Set<String> old = legacy.getStringSet(LEGACY_KEY, null);
+        if (old != null) {
+            pending.addAll(old);
+            persistPending();
+            legacy.edit().remove(LEGACY_KEY).apply();
+        }
+        if (!pending.isEmpty()) main.postDelayed(flushTask, FLUSH_DELAY_MS);
+    }
+
+    // -------------------- Public API --------------------
+
+    /** Record a collect; written with the next batch. Idempotent. Any thread. */
+    public void markCollected(@Nullable String eggId) {
+        if (eggId == null || eggId.isEmpty()) return;
+        synchronized (this) {
+            if (known.contains(eggId) || !pending.add(eggId)) return;
+            persistPending();
+        }
+        main.removeCallbacks(flushTask);
+        main.postDelayed(flushTask, FLUSH_DELAY_MS);
+    }
+
+    /** Commit whatever is pending now (e.g. when leaving the AR screen). Any thread. */
+    public void flush() {
+        main.removeCallbacks(flushTask);
+        final String uid = FirebaseAuth.getInstance().getUid();
+        final List<String> ids;
+        synchronized (this) {
+            if (flushing || pending.isEmpty()) return;
+            if (uid == null) { scheduleRetry(); return; } // not signed in yet
+            flushing = true;
+            ids = new ArrayList<>(pending);
+        }
+
+        final DocumentReference user = userDoc(uid);
+        user.get().addOnCompleteListener(read -> {
+            Set<String> already = read.isSuccessful() ? idsOf(read.getResult()) : Collections.emptySet();
+            List<String> fresh = new ArrayList<>();
+            for (String id : ids) {
+                if (!already.contains(id) && fresh.size() < MAX_BATCH_EGGS) fresh.add(id);
+            }
+
+            final List<String> handedOff = new ArrayList<>(fresh);
+            for (String id : ids) if (already.contains(id)) handedOff.add(id);
+
+            Task<Void> commit = fresh.isEmpty() ? Tasks.forResult(null) : commitBatch(user, fresh);
+            synchronized (this) {
+                pending.removeAll(handedOff);
+                known.addAll(handedOff);
+                persistPending();
+                flushing = false;
+            }
+
+            commit.addOnSuccessListener(v -> {
+                retryDelayMs = RETRY_BASE_MS;
+                synchronized (this) { if (!pending.isEmpty()) main.post(flushTask); }
+            }).addOnFailureListener(err -> {
+                Log.w(TAG, "Collection batch rejected; will retry " + fresh.size() + " ids", err);
+                synchronized (this) {
+                    known.removeAll(fresh);
+                    pending.addAll(fresh);
+                    persistPending();
+                    scheduleRetry();
+                }
+            });
+        });
+    }
+
+    /**
+     * Ids this user has collected: the per-user record (cache or server) plus anything still
+     * waiting to be written. Empty if not signed in and nothing is pending.
+     */
+    public Task<Set<String>> fetchCollectedIds() {
+        final Set<String> local;
+        synchronized (this) { local = new HashSet<>(pending); }
+        String uid = FirebaseAuth.getInstance().getUid();
+        if (uid == null) return Tasks.forResult(local);
+
+        return userDoc(uid).get().continueWith(t -> {
+            Set<String> out = t.isSuccessful() ? idsOf(t.getResult()) : new HashSet<>();
+            if (!t.isSuccessful()) Log.w(TAG, "Collection record read failed", t.getException());
+            synchronized (this) { known.addAll(out); }
+            out.addAll(local);
+            return out;
+        });
+    }
+
+    /** Times this egg has been collected (sum of its counter shards). */
+    public Task<Long> fetchCollectCount(@NonNull String eggId) {
+        return db.collection("eggs").document(eggId).collection(SHARDS).get()
+                .continueWith(t -> {
+                    long total = 0;
+                    for (DocumentSnapshot d : t.getResult().getDocuments()) {
+                        Long c = d.getLong(FIELD_COUNT);
+                        if (c != null) total += c;
+                    }
+                    return total;
+                });
+    }
+
+    // -------------------- Internals --------------------
+
+    private Task<Void> commitBatch(DocumentReference user, List<String> eggIds) {
+        WriteBatch batch = db.batch();
+
+        Map<String, Object> record = new HashMap<>();
+        record.put(FIELD_EGG_IDS, FieldValue.arrayUnion(eggIds.toArray()));
+        record.put("updatedAt", FieldValue.serverTimestamp());
+        batch.set(user, record, SetOptions.merge());
+
+        for (String id : eggIds) {
+            DocumentReference shard = db.collection("eggs").document(id)
+                    .collection(SHARDS).document(String.valueOf(random.nextInt(NUM_SHARDS)));
+            batch.set(shard, Collections.singletonMap(FIELD_COUNT, FieldValue.increment(1)), SetOptions.merge());
+        }
+        return batch.commit();
+    }
+
+    private DocumentReference userDoc(String uid) {
+        return db.collection(USERS).document(uid);
+    }
+
+    private static Set<String> idsOf(@Nullable DocumentSnapshot d) {
+        Set<String> out = new HashSet<>();
+        Object raw = d != null ? d.get(FIELD_EGG_IDS) : null;
+        if (raw instanceof List) {
+            for (Object o : (List<?>) raw) if (o instanceof String) out.add((String) o);
+        }
+        return out;
+    }
+
+    /** Caller holds the lock. */
+    private void persistPending() {
+        prefs.edit().putStringSet(KEY_PENDING, new HashSet<>(pending)).apply();
+    }
+
+    /** Caller holds the lock. */
+    private void scheduleRetry() {
+        main.removeCallbacks(flushTask);
+        main.postDelayed(flushTask, retryDelayMs);
+        retryDelayMs = Math.min(retryDelayMs * 2, RETRY_MAX_MS);
+    }
+}
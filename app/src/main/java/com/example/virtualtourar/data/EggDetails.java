@@ -0,0 +1,55 @@
+package com.example.virtualtourar.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tap-time half of an egg: text, media and quiz. Fetched on demand by
+ * {@link EggRepository#fetchEggDetails} and cached there; never part of the catalog.
+ */
+public final class EggDetails {
+
+    public final String id;
+    public final @Nullable String title;
+    public final @Nullable String description;
+    public final @Nullable String speechTranscript;
+
+    public final List<String> photoPaths;
+    public final @Nullable String cardImageUrl;
+    public final @Nullable String audioUrl;
+    public final @Nullable String audioPath;
+
+    public final List<EggEntry.QuizQuestion> quiz;
+
+    private final @Nullable String firstImage;
+    private final @Nullable String primaryAudio;
+    private final boolean validQuiz;
+
+    private EggDetails(EggEntry e) {
+        id = e.id;
+        title = e.title;
+        description = e.description;
+        speechTranscript = e.speechTranscript;
+        photoPaths = e.photoPaths != null ? Collections.unmodifiableList(e.photoPaths) : Collections.emptyList();
+        cardImageUrl = e.cardImageUrl;
+        audioUrl = e.audioUrl;
+        audioPath = e.audioPath;
+        quiz = e.quiz != null ? Collections.unmodifiableList(e.quiz) : Collections.emptyList();
+        firstImage = e.firstImageOrUrl();
+        primaryAudio = e.primaryAudioForPlayback();
+        validQuiz = e.hasValidQuiz();
+    }
+
+    public static EggDetails of(@NonNull EggEntry e) { return new EggDetails(e); }
+
+    /** cardImageUrl if present, else the first photo path. */
+    public @Nullable String firstImageOrUrl() { return firstImage; }
+
+    /** audioUrl if present, else audioPath. */
+    public @Nullable String primaryAudio() { return primaryAudio; }
+
+    public boolean hasQuiz() { return validQuiz; }
+}
@@ -9,7 +9,10 @@ import com.google.firebase.firestore.GeoPoint;
 import java.util.ArrayList;
 import java.util.List;
 
-/** Firestore model for an egg entry (viewer). */
+/**
+ * Firestore model for an egg entry (viewer): the full document. The catalog keeps only an
+ * {@link EggIndexEntry} per egg; taps load {@link EggDetails}.
+ */
 @Keep
 public class EggEntry {
 
@@ -24,6 +27,7 @@ public class EggEntry {
     public @Nullable Double heading;
     public @Nullable Double horizAcc;  // meters
     public @Nullable Double vertAcc;   // meters
+    public @Nullable String geohash;   // derived from geo; indexed for radius queries
 
     // Pose snapshot (4x4 matrix flattened, length 16)
     public @Nullable List<Float> poseMatrix;
@@ -44,8 +48,6 @@ public class EggEntry {
     public @Nullable Timestamp createdAt;
     public @Nullable Timestamp updatedAt;
 
-    public @Nullable List<String> collectedBy;
-
     public @Nullable String speechTranscript;
 
     // Anchoring
@@ -0,0 +1,183 @@
+package com.example.virtualtourar.data;
+
+import androidx.annotation.Nullable;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.GeoPoint;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written DocumentSnapshot data → EggEntry binding, used instead of reflective
+ * {@code toObject(EggEntry.class)}.
+ *
+ * One pass over {@code getData()}: values are coerced leniently (numbers stored as strings,
+ * Long vs Double, Date vs Timestamp) instead of failing the whole document, the legacy quiz keys
+ * ({q, answer}) are read alongside the new ones ({question, correctIndex}), and cloudAnchorId
+ * fills in for a missing cloudId.
+ */
+public final class EggEntryMapper {
+
+    private EggEntryMapper() {}
+
+    /** Null if there is no data (document missing). Media fields are left as stored. */
+    public static @Nullable EggEntry map(String id, @Nullable Map<String, Object> d) {
+        if (d == null) return null;
+        EggEntry e = new EggEntry();
+        e.id = id;
+        readIndexFields(e, d);
+
+        e.userId      = str(d.get("userId"));
+        e.description = str(d.get("description"));
+        e.horizAcc    = dbl(d.get("horizAcc"));
+        e.vertAcc     = dbl(d.get("vertAcc"));
+        e.poseMatrix  = floatList(d.get("poseMatrix"));
+        e.photoPaths  = strList(d.get("photoPaths"));
+        e.hasMedia    = bool(d.get("hasMedia"));
+        e.quiz        = quiz(d.get("quiz"));
+        e.createdAt   = ts(d.get("createdAt"));
+        e.speechTranscript = str(d.get("speechTranscript"));
+
+        e.placementType      = str(d.get("placementType"));
+        Double dist          = dbl(d.get("distanceFromCamera"));
+        e.distanceFromCamera = dist != null ? dist.floatValue() : null;
+        e.refImage           = str(d.get("refImage"));
+        return e;
+    }
+
+    /**
+     * Only what {@link EggIndexEntry} needs (placement, anchoring, first image / audio refs);
+     * the heavy lists and text are never touched. Null if there is no data.
+     */
+    public static @Nullable EggEntry mapIndexFields(String id, @Nullable Map<String, Object> d) {
+        if (d == null) return null;
+        EggEntry e = new EggEntry();
+        e.id = id;
+        readIndexFields(e, d);
+        Object photos = d.get("photoPaths");
+        if (photos instanceof List && !((List<?>) photos).isEmpty()) {
+            String first = str(((List<?>) photos).get(0));
+            if (first != null) {
+                e.photoPaths = new ArrayList<>(1);
+                e.photoPaths.add(first);
+            }
+        }
+        return e;
+    }
+
+    private static void readIndexFields(EggEntry e, Map<String, Object> d) {
+        e.title = str(d.get("title"));
+
+        Object geo = d.get("geo");
+        if (geo instanceof GeoPoint) e.geo = (GeoPoint) geo;
+        e.alt     = dbl(d.get("alt"));
+        e.heading = dbl(d.get("heading"));
+        e.geohash = str(d.get("geohash"));
+
+        e.audioPath    = str(d.get("audioPath"));
+        e.cardImageUrl = str(d.get("cardImageUrl"));
+        e.audioUrl     = str(d.get("audioUrl"));
+        e.updatedAt    = ts(d.get("updatedAt"));
+
+        e.anchorType    = str(d.get("anchorType"));
+        e.cloudAnchorId = str(d.get("cloudAnchorId"));
+        e.cloudId       = str(d.get("cloudId"));
+        if (isBlank(e.cloudId)) e.cloudId = e.cloudAnchorId;
+        e.cloudTtlDays  = lng(d.get("cloudTtlDays"));
+        e.cloudHostedAt = ts(d.get("cloudHostedAt"));
+    }
+
+    // -------------------- Quiz --------------------
+
+    /** Questions with at least two options; both key generations are kept on each question. */
+    private static @Nullable List<EggEntry.QuizQuestion> quiz(@Nullable Object raw) {
+        if (!(raw instanceof List)) return null;
+        List<?> list = (List<?>) raw;
+        List<EggEntry.QuizQuestion> out = new ArrayList<>(list.size());
+        for (Object o : list) {
+            if (!(o instanceof Map)) continue;
+            Map<?, ?> m = (Map<?, ?>) o;
+
+            EggEntry.QuizQuestion q = new EggEntry.QuizQuestion();
+            q.options = strList(m.get("options"));
+            if (q.options == null || q.options.size() < 2) continue;
+
+            String promptNew = str(m.get("question"));
+            String promptOld = str(m.get("q"));
+            if (!isBlank(promptNew)) q.question = promptNew;
+            if (!isBlank(promptOld)) q.q = promptOld;
+
+            Long idx = lng(m.get("correctIndex"));
+            if (idx == null) idx = lng(m.get("answer"));
+            if (idx != null) {
+                q.correctIndex = idx;
+                q.answer = idx; // keep legacy field too
+            }
+            out.add(q);
+        }
+        return out.isEmpty() ? null : out;
+    }
+
+    // -------------------- Coercion --------------------
+
+    private static @Nullable String str(@Nullable Object o) {
+        if (o instanceof String) return (String) o;
+        if (o instanceof Number || o instanceof Boolean) return String.valueOf(o);
+        return null;
+    }
+
+    private static @Nullable Double dbl(@Nullable Object o) {
+        if (o instanceof Number) return ((Number) o).doubleValue();
+        if (o instanceof String) {
+            try { return Double.parseDouble(((String) o).trim()); } catch (NumberFormatException ignore) {}
+        }
+        return null;
+    }
+
+    private static @Nullable Long lng(@Nullable Object o) {
+        if (o instanceof Number) return ((Number) o).longValue();
+        if (o instanceof String) {
+            try { return Long.parseLong(((String) o).trim()); } catch (NumberFormatException ignore) {}
+        }
+        return null;
+    }
+
+    private static @Nullable Boolean bool(@Nullable Object o) {
+        if (o instanceof Boolean) return (Boolean) o;
+        if (o instanceof String) return Boolean.parseBoolean(((String) o).trim());
+        return null;
+    }
+
+    private static @Nullable Timestamp ts(@Nullable Object o) {
+        if (o instanceof Timestamp) return (Timestamp) o;
+        if (o instanceof Date) return new Timestamp((Date) o);
+        return null;
+    }
+
+    private static @Nullable List<String> strList(@Nullable Object o) {
+        if (!(o instanceof List)) return null;
+        List<?> in = (List<?>) o;
+        List<String> out = new ArrayList<>(in.size());
+        for (Object v : in) {
+            String s = str(v);
+            if (s != null) out.add(s);
+        }
+        return out;
+    }
+
+    private static @Nullable List<Float> floatList(@Nullable Object o) {
+        if (!(o instanceof List)) return null;
+        List<?> in = (List<?>) o;
+        List<Float> out = new ArrayList<>(in.size());
+        for (Object v : in) {
+            Double x = dbl(v);
+            if (x != null) out.add(x.floatValue());
+        }
+        return out;
+    }
+
+    private static boolean isBlank(@Nullable String s) { return s == null || s.trim().isEmpty(); }
+}
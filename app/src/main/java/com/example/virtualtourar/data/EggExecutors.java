@@ -0,0 +1,158 @@
+package com.example.virtualtourar.data;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for catalog work, so Firestore continuations don't map documents on the main thread.
+ *
+ * DECODE: CPU-bound mapping / index building, sized to the cores (minus one for the UI/GL).
+ * IO:     small pool for disk and Play services calls that may block.
+ * MAIN:   hand results back to the UI.
+ *
+ * Pools have fixed threads and unbounded queues: work is never run on the submitting thread
+ * (often main, via Task continuations) and never dropped. Code that blocks for long (Play
+ * services IPC) gets its own thread from {@link #newSingleThread} instead of holding IO.
+ */
+public final class EggExecutors {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int DECODE_THREADS = Math.max(2, Math.min(4, CORES - 1));
+    private static final int IO_THREADS = 2;
+
+    /** Below this many items per chunk, fan-out costs more than it saves. */
+    private static final int MIN_CHUNK = 64;
+
+    public static final Executor DECODE = newPool("egg-decode", DECODE_THREADS, Process.THREAD_PRIORITY_BACKGROUND);
+    public static final Executor IO = newPool("egg-io", IO_THREADS, Process.THREAD_PRIORITY_BACKGROUND);
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    public static final Executor MAIN = MAIN_HANDLER::post;
+
+    private EggExecutors() {}
+
+    /** Per-item mapping for {@link #mapParallel}; return null to drop the item. */
+    public interface Mapper<T, R> { @Nullable R map(T in); }
+
+    /**
+     * Map {@code in} in contiguous chunks on DECODE and return an immutable list aligned with the
+     * input (null where the mapper returned null). The calling thread runs a chunk itself and then
+     * helps with any chunk no worker has picked up yet, so this is safe to call from a DECODE thread.
+     */
+    public static <T, R> List<R> mapParallel(@NonNull List<T> in, @NonNull Mapper<T, R> mapper) {
+        final int n = in.size();
+        @SuppressWarnings("unchecked")
+        final R[] out = (R[]) new Object[n];
+        int chunks = Math.min(DECODE_THREADS + 1, (n + MIN_CHUNK - 1) / MIN_CHUNK);
+
+        if (chunks <= 1) {
+            for (int i = 0; i < n; i++) out[i] = mapper.map(in.get(i));
+            return Collections.unmodifiableList(Arrays.asList(out));
+        }
+
+        int size = (n + chunks - 1) / chunks;
+        List<FutureTask<Void>> tasks = new ArrayList<>(chunks - 1);
+        for (int from = size; from < n; from += size) {
+            final int lo = from, hi = Math.min(n, from + size);
+            FutureTask<Void> t = new FutureTask<>(() -> {
+                for (int i = lo; i < hi; i++) out[i] = mapper.map(in.get(i));
+                return null;
+            });
+            tasks.add(t);
+            DECODE.execute(t);
+        }
+        for (int i = 0; i < size; i++) out[i] = mapper.map(in.get(i));
+
+        for (FutureTask<Void> t : tasks) {
+            t.run(); // no-op if a worker already ran / is running it
+            try {
+                t.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        return Collections.unmodifiableList(Arrays.asList(out));
+    }
+
+    /** Same list without the nulls (still immutable). */
+    public static <T> List<T> compact(@NonNull List<T> in) {
+        List<T> out = new ArrayList<>(in.size());
+        for (T t : in) if (t != null) out.add(t);
+        return Collections.unmodifiableList(out);
+    }
+
+    /** A dedicated background thread (started on demand, idles out), tasks in submission order. */
+    public static Executor newSingleThread(@NonNull String name) {
+        return newPool(name, 1, Process.THREAD_PRIORITY_BACKGROUND);
+    }
+
+    /** Runs tasks one at a time, in submission order, on {@code backing}. */
+    public static Executor newSerialExecutor(@NonNull Executor backing) {
+        return new SerialExecutor(backing);
+    }
+
+    // -------------------- internals --------------------
+
+    private static Executor newPool(String name, int threads, int priority) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                namedFactory(name, priority));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory namedFactory(String name, int priority) {
+        final AtomicInteger seq = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(priority);
+                r.run();
+            }, name + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static final class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        private final Executor backing;
+        @Nullable private Runnable active;
+
+        SerialExecutor(Executor backing) { this.backing = backing; }
+
+        @Override public synchronized void execute(@NonNull Runnable r) {
+            queue.offer(() -> {
+                try { r.run(); } finally { scheduleNext(); }
+            });
+            if (active == null) scheduleNext();
+        }
+
+        private synchronized void scheduleNext() {
+            if ((active = queue.poll()) != null) backing.execute(active);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.virtualtourar.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.GeoPoint;
+
+/**
+ * What the catalog keeps per egg: just enough to place, resolve and geofence it.
+ * Everything only needed after a tap (description, quiz, transcript, photo list, pose matrix)
+ * lives in {@link EggDetails} and is loaded on demand. Who collected it lives in
+ * {@link CollectionRepository}.
+ *
+ * Immutable; safe to share between the main, GL and worker threads.
+ */
+public final class EggIndexEntry {
+
+    public final String id;
+    /** Short label for geofence / nearby notifications. */
+    public final @Nullable String title;
+
+    public final @Nullable GeoPoint geo;
+    public final @Nullable String geohash;
+    public final @Nullable Double alt;
+    public final @Nullable Double heading;
+
+    public final @Nullable String anchorType;
+    /** Usable Cloud Anchor id (cloudId, else cloudAnchorId), trimmed; null if none. */
+    public final @Nullable String cloudId;
+    public final @Nullable Long cloudTtlDays;
+    public final @Nullable Timestamp cloudHostedAt;
+    public final @Nullable Timestamp updatedAt;
+
+    /** First image / primary audio reference, for prefetch and the puzzle clue. */
+    public final @Nullable String imageRef;
+    public final @Nullable String audioRef;
+
+    /** True if the heavy fields live in {@code eggs/{id}/details/main} rather than the egg doc. */
+    public final boolean detailsInSubdoc;
+
+    /** Model kind, rotation, scale, saved orientation and HAT compiled at ingest. */
+    public final @NonNull RenderDescriptor render;
+
+    EggIndexEntry(String id, @Nullable String title,
+                  @Nullable GeoPoint geo, @Nullable String geohash,
+                  @Nullable Double alt, @Nullable Double heading,
+                  @Nullable String anchorType, @Nullable String cloudId,
+                  @Nullable Long cloudTtlDays, @Nullable Timestamp cloudHostedAt,
+                  @Nullable Timestamp updatedAt,
+                  @Nullable String imageRef, @Nullable String audioRef,
+                  boolean detailsInSubdoc, @NonNull RenderDescriptor render) {
+        this.id = id;
+        this.title = title;
+        this.geo = geo;
+        this.geohash = geohash;
+        this.alt = alt;
+        this.heading = heading;
+        this.anchorType = anchorType;
+        this.cloudId = cloudId;
+        this.cloudTtlDays = cloudTtlDays;
+        this.cloudHostedAt = cloudHostedAt;
+        this.updatedAt = updatedAt;
+        this.imageRef = imageRef;
+        this.audioRef = audioRef;
+        this.detailsInSubdoc = detailsInSubdoc;
+        this.render = render;
+    }
+
+    /** Project a fully mapped entry (render compiled from anchorType only if not given). */
+    public static EggIndexEntry of(@NonNull EggEntry e, @Nullable RenderDescriptor render, boolean detailsInSubdoc) {
+        return new EggIndexEntry(
+                e.id, e.title, e.geo, e.geohash, e.alt, e.heading,
+                e.anchorType, e.bestCloudId(), e.cloudTtlDays, e.cloudHostedAt, e.updatedAt,
+                e.firstImageOrUrl(), e.primaryAudioForPlayback(), detailsInSubdoc,
+                render != null ? render : RenderDescriptor.compile(e.id, e.anchorType, null));
+    }
+
+    public double lat() { return geo != null ? geo.getLatitude() : 0; }
+    public double lng() { return geo != null ? geo.getLongitude() : 0; }
+
+    public @Nullable String bestCloudId() { return cloudId; }
+
+    public boolean isCloud() { return "CLOUD".equalsIgnoreCase(anchorType); }
+    public boolean isGeo()   { return "GEO".equalsIgnoreCase(anchorType); }
+    public boolean isPuzzle() { return render.isPuzzle(); }
+}
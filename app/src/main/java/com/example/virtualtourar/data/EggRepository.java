@@ -1,120 +1,423 @@
 package com.example.virtualtourar.data;
 
+import android.location.Location;
 import android.net.Uri;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.example.virtualtourar.data.spatial.GeoHash;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.Source;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-
-/** Repository for fetching & normalizing Egg data + resolving media URIs. */
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Repository for fetching & normalizing Egg data + resolving media URIs.
+ * Documents are mapped on {@link EggExecutors#DECODE}; listeners added to the returned tasks
+ * without an executor still run on the main thread.
+ */
 public class EggRepository {
     private static final String TAG = "EggRepository";
+    /** Precision stored in the "geohash" field (≈ 4.8m cells); prefixes of it serve coarser queries. */
+    private static final int GEOHASH_PRECISION = GeoHash.MAX_PRECISION;
+    /** Firestore's cap on values in a single whereIn filter. */
+    private static final int WHERE_IN_LIMIT = 30;
+
+    /** Egg-doc flag: heavy fields live in eggs/{id}/details/main instead of the egg doc. */
+    private static final String DETAILS_FLAG = "detailsDoc";
+    private static final String DETAILS_COLLECTION = "details";
+    private static final String DETAILS_DOC = "main";
+    /** Set by an admin (meta/catalog.geohashIndexed) once every egg doc carries "geohash". */
+    private static final String META_COLLECTION = "meta";
+    private static final String META_CATALOG_DOC = "catalog";
+    private static final String GEOHASH_INDEXED_FIELD = "geohashIndexed";
+    /** Egg-doc flag for a soft delete, so delta listeners see removals (see {@link #observeEggs}). */
+    private static final String TOMBSTONE_FLAG = "deleted";
+
+    /** Recently opened egg details, shared by all repository instances. */
+    private static final LruCache<String, EggDetails> DETAILS_CACHE = new LruCache<>(64);
+
+    /** Default radius for "the part of the catalog that matters here" (AR session, geofences). */
+    public static final double NEARBY_CATALOG_RADIUS_M = 3_000d;
     private final FirebaseFirestore db = FirebaseFirestore.getInstance();
-    /** Root ref used for bucket-relative paths like "eggs/abc/photo.jpg". */
-    private final StorageReference storageRoot = FirebaseStorage.getInstance().getReference();
+    private final MediaResolver media = MediaResolver.get();
 
     // -------------------- Public API --------------------
 
-    /** Fetch all eggs. */
-    public Task<List<EggEntry>> fetchAllEggs() { return fetchAllEggs(false); }
+    /** Fetch the whole catalog (index entries only; see {@link #fetchEggDetails}). */
+    public Task<List<EggIndexEntry>> fetchAllEggs() { return fetchAllEggs(false); }
 
     /** Fetch all eggs; set forceServer=true to bypass local cache. */
-    public Task<List<EggEntry>> fetchAllEggs(boolean forceServer) {
+    public Task<List<EggIndexEntry>> fetchAllEggs(boolean forceServer) {
         return db.collection("eggs")
                 .get(forceServer ? Source.SERVER : Source.DEFAULT)
-                .onSuccessTask(qs -> {
-                    List<EggEntry> out = new ArrayList<>();
-                    for (DocumentSnapshot d : qs.getDocuments()) {
-                        EggEntry e = d.toObject(EggEntry.class);
-                        if (e != null) {
-                            e.id = d.getId();
-                            sanitizeMediaFields(e);
-                            hydrateQuizIfNeeded(d, e);
-                            out.add(e);
+                .onSuccessTask(EggExecutors.DECODE, qs -> Tasks.forResult(mapAll(qs.getDocuments())));
+    }
+
+    /**
+     * Fetch only the eggs within radiusMeters of (lat,lng).
+     * Runs one geohash prefix range query per covering cell (≤ 9, usually 1–4), merges them,
+     * then drops the corners with an exact distance check. Eggs whose document has no
+     * "geohash" field are invisible here; the field is written by the one-time admin migration
+     * (see README), never by the app, so only use this once {@link #isGeohashIndexed} says so.
+     */
+    public Task<List<EggIndexEntry>> fetchEggsNear(double lat, double lng, double radiusMeters) {
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        for (String prefix : GeoHash.coveringPrefixes(lat, lng, radiusMeters)) {
+            queries.add(db.collection("eggs")
+                    .orderBy("geohash")
+                    .startAt(prefix)
+                    .endAt(prefix + "\uf8ff")
+                    .get());
+        }
+        return Tasks.whenAllSuccess(queries).onSuccessTask(EggExecutors.DECODE, results -> {
+            Map<String, DocumentSnapshot> byId = new LinkedHashMap<>();
+            for (Object r : results) {
+                for (DocumentSnapshot d : ((QuerySnapshot) r).getDocuments()) {
+                    if (!byId.containsKey(d.getId())) byId.put(d.getId(), d); // overlapping prefixes
+                }
+            }
+            return Tasks.forResult(within(mapAll(new ArrayList<>(byId.values())), lat, lng, radiusMeters));
+        });
+    }
+
+    /**
+     * Page through the whole collection ({@code limit} + {@code startAfter} on document id) and hand
+     * each page to the consumer (main thread) as soon as it is mapped, instead of building one big
+     * list first. Peak memory is one page of snapshots. Resolves to the number of eggs delivered.
+     */
+    public Task<Integer> streamEggs(int pageSize, EggPageConsumer consumer) {
+        return streamEggs(pageSize, false, consumer);
+    }
+
+    public Task<Integer> streamEggs(int pageSize, boolean forceServer, EggPageConsumer consumer) {
+        return fetchPage(null, Math.max(1, pageSize), forceServer ? Source.SERVER : Source.DEFAULT, consumer, 0);
+    }
+
+    private Task<Integer> fetchPage(@Nullable DocumentSnapshot after, int pageSize, Source source,
+                                    EggPageConsumer consumer, int deliveredSoFar) {
+        Query q = db.collection("eggs").orderBy(FieldPath.documentId()).limit(pageSize);
+        if (after != null) q = q.startAfter(after);
+        return q.get(source).onSuccessTask(EggExecutors.DECODE, qs -> {
+            final List<DocumentSnapshot> docs = qs.getDocuments();
+            final List<EggIndexEntry> page = mapAll(docs);
+            return Tasks.call(EggExecutors.MAIN, () -> {
+                if (!page.isEmpty()) consumer.onPage(page);
+                return deliveredSoFar + page.size();
+            }).onSuccessTask(delivered -> {
+                if (docs.size() < pageSize) return Tasks.forResult(delivered);
+                return fetchPage(docs.get(docs.size() - 1), pageSize, source, consumer, delivered);
+            });
+        });
+    }
+
+    /**
+     * Details for just these eggs: document-id {@code whereIn} queries of at most
+     * {@value #WHERE_IN_LIMIT} ids, run in parallel. Each chunk is answered from the local cache
+     * first and only the ids missing there go to the server. Results follow the order of
+     * {@code ids} (duplicates/blanks ignored); ids with no document / details are skipped.
+     */
+    public Task<List<EggDetails>> fetchEggsByIds(@Nullable Collection<String> ids) {
+        final List<String> wanted = new ArrayList<>();
+        if (ids != null) {
+            for (String id : new LinkedHashSet<>(ids)) if (!isEmpty(id)) wanted.add(id);
+        }
+        if (wanted.isEmpty()) return Tasks.forResult(Collections.emptyList());
+
+        List<Task<List<DocumentSnapshot>>> chunks = new ArrayList<>();
+        for (int i = 0; i < wanted.size(); i += WHERE_IN_LIMIT) {
+            chunks.add(fetchDocsByIds(wanted.subList(i, Math.min(wanted.size(), i + WHERE_IN_LIMIT))));
+        }
+        return Tasks.whenAllSuccess(chunks).onSuccessTask(EggExecutors.DECODE, results -> {
+            Map<String, DocumentSnapshot> byId = new HashMap<>();
+            for (Object r : results) {
+                for (Object d : (List<?>) r) byId.put(((DocumentSnapshot) d).getId(), (DocumentSnapshot) d);
+            }
+            List<Task<EggDetails>> details = new ArrayList<>(byId.size());
+            for (String id : wanted) {
+                DocumentSnapshot d = byId.get(id);
+                if (d == null || !d.exists()) continue;
+                EggIndexEntry idx = mapIndexDocument(d);
+                if (idx == null) continue;
+                details.add(idx.detailsInSubdoc
+                        ? fetchEggDetails(idx).continueWith(t -> t.isSuccessful() ? t.getResult() : null)
+                        : Tasks.forResult(cacheDetails(mapDetails(id, d.getData(), null))));
+            }
+            return Tasks.<EggDetails>whenAllSuccess(details);
+        }).onSuccessTask(list -> Tasks.forResult(EggExecutors.compact(list)));
+    }
+
+    /** One whereIn chunk: cache first, then the server for whatever the cache didn't have. */
+    private Task<List<DocumentSnapshot>> fetchDocsByIds(List<String> ids) {
+        return db.collection("eggs").whereIn(FieldPath.documentId(), ids).get(Source.CACHE)
+                .continueWithTask(cached -> {
+                    final List<DocumentSnapshot> found = new ArrayList<>();
+                    final Set<String> have = new HashSet<>();
+                    if (cached.isSuccessful() && cached.getResult() != null) {
+                        for (DocumentSnapshot d : cached.getResult().getDocuments()) {
+                            found.add(d);
+                            have.add(d.getId());
                         }
                     }
-                    return Tasks.forResult(out);
+                    List<String> missing = new ArrayList<>();
+                    for (String id : ids) if (!have.contains(id)) missing.add(id);
+                    if (missing.isEmpty()) return Tasks.forResult(found);
+
+                    return db.collection("eggs").whereIn(FieldPath.documentId(), missing).get()
+                            .onSuccessTask(qs -> {
+                                found.addAll(qs.getDocuments());
+                                return Tasks.forResult(found);
+                            });
                 });
     }
 
-    /** Fetch a single egg by id. */
-    public Task<EggEntry> fetchEggById(String id) { return fetchEggById(id, false); }
+    /** Whether the admin has flagged the geohash migration as done; false if unset or unreadable. Never fails. */
+    public Task<Boolean> isGeohashIndexed() {
+        return db.collection(META_COLLECTION).document(META_CATALOG_DOC).get()
+                .continueWith(t -> t.isSuccessful() && t.getResult() != null
+                        && Boolean.TRUE.equals(t.getResult().getBoolean(GEOHASH_INDEXED_FIELD)));
+    }
 
-    public Task<EggEntry> fetchEggById(String id, boolean forceServer) {
-        return db.collection("eggs").document(id)
-                .get(forceServer ? Source.SERVER : Source.DEFAULT)
-                .onSuccessTask(d -> {
-                    EggEntry e = d.toObject(EggEntry.class);
-                    if (e != null) {
-                        e.id = d.getId();
-                        sanitizeMediaFields(e);
-                        hydrateQuizIfNeeded(d, e);
+    /**
+     * Eggs around a last-known fix; falls back to the whole catalog when there's no fix. Until the
+     * geohash migration is flagged, the radius is applied to a full fetch instead of the range query.
+     */
+    public Task<List<EggIndexEntry>> fetchEggsAround(@Nullable Location here, double radiusMeters) {
+        if (here == null) return fetchAllEggs();
+        final double lat = here.getLatitude(), lng = here.getLongitude();
+        return isGeohashIndexed().continueWithTask(ready -> Boolean.TRUE.equals(ready.getResult())
+                ? fetchEggsNear(lat, lng, radiusMeters)
+                : fetchAllEggs().onSuccessTask(EggExecutors.DECODE,
+                        all -> Tasks.forResult(within(all, lat, lng, radiusMeters))));
+    }
+
+    /**
+     * Live delta stream of the catalog: snapshot listeners on {@code updatedAt > since}, limited
+     * to the same geohash prefixes (and exact radius) as {@link #fetchEggsNear} for that area, or
+     * the whole collection when {@code center} is null (the {@link #streamEggs} load).
+     * Each event carries only the documents that changed since the previous one, plus the
+     * advanced cursor. {@code since} is the newest updatedAt you already hold (see
+     * {@link #maxUpdatedAt}); there is deliberately no cursor-less variant, so load first.
+     *
+     * Deletes are expected as tombstones ("deleted": true plus a new updatedAt), delivered in
+     * {@code removedIds}, as are eggs that moved out of the area. A hard delete is only seen if the
+     * doc was in the listener's result set; the next full load reconciles the rest. Docs with
+     * local pending writes are skipped (the app never writes eggs/*).
+     * Callbacks run on the main thread; call {@code remove()} on the registration when done.
+     */
+    public ListenerRegistration observeEggs(@NonNull Timestamp since, @Nullable Location center,
+                                            double radiusMeters, EggDeltaListener listener) {
+        final Query base = db.collection("eggs").whereGreaterThan("updatedAt", since);
+        final List<Query> queries = new ArrayList<>();
+        if (center == null) {
+            queries.add(base);
+        } else {
+            for (String prefix : GeoHash.coveringPrefixes(center.getLatitude(), center.getLongitude(), radiusMeters)) {
+                queries.add(prefix.isEmpty() ? base : base
+                        .whereGreaterThanOrEqualTo("geohash", prefix)
+                        .whereLessThanOrEqualTo("geohash", prefix + "\uf8ff"));
+            }
+        }
+        final Timestamp[] cursor = { since };
+        // Map on a serial worker so events stay ordered and the cursor needs no locking.
+        final Executor worker = EggExecutors.newSerialExecutor(EggExecutors.DECODE);
+        final List<ListenerRegistration> regs = new ArrayList<>(queries.size());
+        for (Query q : queries) {
+            regs.add(q.addSnapshotListener(worker, (qs, err) -> {
+                if (err != null) {
+                    Log.w(TAG, "observeEggs listener error", err);
+                    return;
+                }
+                if (qs == null) return;
+
+                List<EggIndexEntry> added = new ArrayList<>();
+                List<EggIndexEntry> modified = new ArrayList<>();
+                List<String> removed = new ArrayList<>();
+                for (DocumentChange dc : qs.getDocumentChanges()) {
+                    DocumentSnapshot d = dc.getDocument();
+                    if (dc.getType() != DocumentChange.Type.REMOVED && d.getMetadata().hasPendingWrites()) continue;
+                    DETAILS_CACHE.remove(d.getId()); // changed or gone: next tap refetches
+                    Timestamp ts = d.getTimestamp("updatedAt");
+                    if (ts != null && ts.compareTo(cursor[0]) > 0) cursor[0] = ts;
+                    if (dc.getType() == DocumentChange.Type.REMOVED || isTombstone(d.getData())) {
+                        removed.add(d.getId());
+                        continue;
+                    }
+                    EggIndexEntry e = mapIndexDocument(d);
+                    if (e == null) continue;
+                    if (center != null && (e.geo == null || distanceMeters(center.getLatitude(), center.getLongitude(),
+                            e.geo.getLatitude(), e.geo.getLongitude()) > radiusMeters)) {
+                        removed.add(e.id); // moved out of the area (no-op if we never had it)
+                        continue;
+                    }
+                    if (dc.getType() == DocumentChange.Type.ADDED) added.add(e); else modified.add(e);
+                }
+                if (added.isEmpty() && modified.isEmpty() && removed.isEmpty()) return;
+                final EggDelta delta = new EggDelta(added, modified, removed, cursor[0]);
+                EggExecutors.MAIN.execute(() -> listener.onDelta(delta));
+            }));
+        }
+        return () -> { for (ListenerRegistration r : regs) r.remove(); };
+    }
+
+    /** Newest updatedAt in the list (the sync cursor to resume a delta stream from). */
+    public static @Nullable Timestamp maxUpdatedAt(@Nullable List<EggIndexEntry> eggs) {
+        Timestamp max = null;
+        if (eggs == null) return null;
+        for (EggIndexEntry e : eggs) {
+            if (e != null && e.updatedAt != null && (max == null || e.updatedAt.compareTo(max) > 0)) {
+                max = e.updatedAt;
+            }
+        }
+        return max;
+    }
+
+    /** Tap-time details for an egg: from the in-memory cache if present, else Firestore. */
+    public Task<EggDetails> fetchEggDetails(EggIndexEntry egg) { return fetchEggDetails(egg, false); }
+
+    /**
+     * Details live in {@code eggs/{id}/details/main} when the egg doc sets "detailsDoc": true,
+     * otherwise in the egg doc itself (older layout). forceServer skips both caches.
+     * Fails with NoSuchElementException if the document is gone.
+     */
+    public Task<EggDetails> fetchEggDetails(EggIndexEntry egg, boolean forceServer) {
+        if (!forceServer) {
+            EggDetails hit = DETAILS_CACHE.get(egg.id);
+            if (hit != null) return Tasks.forResult(hit);
+        }
+        DocumentReference ref = egg.detailsInSubdoc ? detailsDocRef(egg.id) : db.collection("eggs").document(egg.id);
+        return ref.get(forceServer ? Source.SERVER : Source.DEFAULT)
+                .onSuccessTask(EggExecutors.DECODE, d -> {
+                    EggDetails details = mapDetails(egg.id, d.getData(), egg.title);
+                    if (details == null) {
+                        return Tasks.forException(new NoSuchElementException("No details for egg " + egg.id));
                     }
-                    return Tasks.forResult(e);
+                    DETAILS_CACHE.put(egg.id, details);
+                    return Tasks.forResult(details);
                 });
     }
 
+    /** Already-loaded details for this egg, or null (no I/O). */
+    public static @Nullable EggDetails cachedDetails(@Nullable String id) {
+        return id == null ? null : DETAILS_CACHE.get(id);
+    }
+
     /** Turn a Storage *path* (e.g. "/eggs/.../photo_0.jpg") into a download URL. */
     public Task<Uri> downloadUrlFromPath(String storagePath) {
-        String p = trimLeadingSlash(storagePath);
-        return storageRoot.child(p).getDownloadUrl();
+        return media.resolve(storagePath);
     }
 
-    /** Batch helper: paths → URLs. */
+    /**
+     * Batch helper: paths → URLs through the resolver's shared batch queue (at most
+     * {@link MediaResolver#MAX_BATCH_IN_FLIGHT} in flight) with retry/backoff. One entry per non-empty path; null where it could not be resolved.
+     */
     public Task<List<Uri>> downloadUrlsFromPaths(List<String> storagePaths) {
-        List<Task<Uri>> tasks = new ArrayList<>();
+        List<String> refs = new ArrayList<>();
         if (storagePaths != null) {
-            for (String sp : storagePaths) {
-                if (!TextUtils.isEmpty(sp)) tasks.add(downloadUrlFromPath(sp));
-            }
+            for (String sp : storagePaths) if (!TextUtils.isEmpty(sp)) refs.add(sp);
         }
-        return Tasks.whenAllSuccess(tasks);
+        return media.resolveAll(refs);
     }
 
     /**
-     * Resolve any media reference into a streamable Uri:
-     * - http(s) → Uri.parse
-     * - content:// or file:// → Uri.parse
-     * - gs://bucket/path or bucket path → Firebase getDownloadUrl
+     * Resolve any media reference into a streamable Uri (see {@link MediaResolver}):
+     * - http(s), content:// or file:// → Uri.parse
+     * - gs://bucket/path or bucket path → cached / deduplicated getDownloadUrl
      */
     public Task<Uri> resolveToUri(@Nullable String urlOrPath) {
-        String s = normalizeUrlOrPath(urlOrPath);
-        if (TextUtils.isEmpty(s)) {
-            return Tasks.forException(new IllegalArgumentException("Empty media reference"));
-        }
-        if (looksHttp(s) || s.startsWith("content://") || s.startsWith("file://")) {
-            return Tasks.forResult(Uri.parse(s));
+        return media.resolve(urlOrPath);
+    }
+
+    // -------------------- Normalization & mapping --------------------
+
+    /**
+     * Map a result page in parallel on the decode pool (call off the main thread). Read-only.
+     * Immutable, in query order, unmappable docs dropped.
+     */
+    private List<EggIndexEntry> mapAll(List<DocumentSnapshot> docs) {
+        return EggExecutors.compact(EggExecutors.mapParallel(docs, this::mapIndexDocument));
+    }
+
+    /** Egg document → normalized index entry (null if the document doesn't exist / can't bind). */
+    private @Nullable EggIndexEntry mapIndexDocument(DocumentSnapshot d) {
+        Map<String, Object> data = d.getData();
+        if (isTombstone(data)) return null;
+        EggEntry e = EggEntryMapper.mapIndexFields(d.getId(), data);
+        if (e == null) return null;
+        sanitizeMediaFields(e);
+        if (e.geo != null && isEmpty(e.geohash)) {
+            e.geohash = GeoHash.encode(e.geo.getLatitude(), e.geo.getLongitude(), GEOHASH_PRECISION);
         }
-        StorageReference ref = storageRefFrom(s);
-        if (ref == null) {
-            return Tasks.forException(new IllegalArgumentException("Bad storage ref: " + s));
+        return EggIndexEntry.of(e, RenderDescriptor.compile(e.id, e.anchorType, data),
+                Boolean.TRUE.equals(data.get(DETAILS_FLAG)));
+    }
+
+    /** Located eggs within radiusMeters of (lat,lng), in input order. Immutable. */
+    private static List<EggIndexEntry> within(List<EggIndexEntry> eggs, double lat, double lng, double radiusMeters) {
+        List<EggIndexEntry> out = new ArrayList<>(eggs.size());
+        for (EggIndexEntry e : eggs) {
+            if (e.geo == null) continue;
+            if (distanceMeters(lat, lng, e.geo.getLatitude(), e.geo.getLongitude()) > radiusMeters) continue;
+            out.add(e);
         }
-        return ref.getDownloadUrl();
+        return Collections.unmodifiableList(out);
     }
 
-    // -------------------- Normalization & mapping --------------------
+    private static boolean isTombstone(@Nullable Map<String, Object> data) {
+        return data != null && Boolean.TRUE.equals(data.get(TOMBSTONE_FLAG));
+    }
+
+    /** Egg or details document data → details (title falls back to the index's, if given). */
+    private @Nullable EggDetails mapDetails(String id, @Nullable Map<String, Object> data, @Nullable String fallbackTitle) {
+        EggEntry e = EggEntryMapper.map(id, data);
+        if (e == null) return null;
+        sanitizeMediaFields(e);
+        if (isEmpty(e.title)) e.title = fallbackTitle;
+        return EggDetails.of(e);
+    }
+
+    private static @Nullable EggDetails cacheDetails(@Nullable EggDetails d) {
+        if (d != null) DETAILS_CACHE.put(d.id, d);
+        return d;
+    }
+
+    private DocumentReference detailsDocRef(String id) {
+        return db.collection("eggs").document(id).collection(DETAILS_COLLECTION).document(DETAILS_DOC);
+    }
 
     /** Normalize media fields (trim, strip leading '/', fix REST URLs, drop empties). */
     private void sanitizeMediaFields(EggEntry e) {
         if (e == null) return;
 
         // URLs: trim + fix REST "alt=media"
-        e.cardImageUrl = normalizeEmptyToNull(normalizeUrlOrPath(e.cardImageUrl));
-        e.audioUrl     = normalizeEmptyToNull(normalizeUrlOrPath(e.audioUrl));
+        e.cardImageUrl = normalizeEmptyToNull(MediaResolver.normalize(e.cardImageUrl));
+        e.audioUrl     = normalizeEmptyToNull(MediaResolver.normalize(e.audioUrl));
 
         // Paths: trim, strip leading '/', leave gs:// as-is
         e.audioPath = normalizeStoragePath(e.audioPath);
@@ -125,8 +428,8 @@ public class EggRepository {
                 if (TextUtils.isEmpty(raw)) continue;
                 String s = raw.trim();
                 // If it's a REST URL, normalize it and keep it as URL; else it's a path/gs://
-                if (looksHttp(s)) {
-                    s = normalizeUrlOrPath(s);
+                if (MediaResolver.looksHttp(s)) {
+                    s = MediaResolver.normalize(s);
                 } else if (!s.startsWith("gs://")) {
                     s = trimLeadingSlash(s);
                 }
@@ -139,88 +442,9 @@ public class EggRepository {
         if (!TextUtils.isEmpty(e.audioUrl)) e.audioPath = normalizeEmptyToNull(e.audioPath);
     }
 
-    // -------------------- Quiz mapping (tolerant) --------------------
-
-    /**
-     * If Firestore didn’t bind quiz cleanly, coerce from List<Map<...>> into typed QuizQuestion objects.
-     * Handles both {question, correctIndex} and legacy {q, answer}.
-     */
-    @SuppressWarnings("unchecked")
-    private void hydrateQuizIfNeeded(DocumentSnapshot d, EggEntry e) {
-        if (e == null) return;
-
-        // If already mapped AND looks valid, keep it.
-        if (e.quiz != null && !e.quiz.isEmpty()) {
-            boolean looksValid = false;
-            for (EggEntry.QuizQuestion q : e.quiz) {
-                if (q != null && q.options != null && q.options.size() >= 2) {
-                    if (!isEmpty(q.question) || !isEmpty(q.q)) { looksValid = true; break; }
-                }
-            }
-            if (looksValid) return;
-        }
-
-        Object raw = d.get("quiz");
-        if (!(raw instanceof List)) return;
-
-        List<?> list = (List<?>) raw;
-        List<EggEntry.QuizQuestion> fixed = new ArrayList<>();
-
-        for (Object o : list) {
-            if (!(o instanceof Map)) continue;
-            Map<String, Object> m = (Map<String, Object>) o;
-
-            EggEntry.QuizQuestion q = new EggEntry.QuizQuestion();
-
-            // Prompt (support both keys)
-            String promptNew = str(m.get("question"));
-            String promptOld = str(m.get("q"));
-            if (!isEmpty(promptNew)) q.question = promptNew;
-            if (!isEmpty(promptOld)) q.q = promptOld;
-
-            // Options
-            Object optsObj = m.get("options");
-            if (optsObj instanceof List) {
-                q.options = new ArrayList<>();
-                for (Object opt : (List<?>) optsObj) {
-                    if (opt != null) q.options.add(String.valueOf(opt));
-                }
-            }
-
-            // Correct index (support both keys; numbers may arrive as Long/Double/String)
-            Long idx = numAsLong(m.get("correctIndex"));
-            if (idx == null) idx = numAsLong(m.get("answer"));
-            if (idx != null) {
-                q.correctIndex = idx;
-                q.answer = idx; // keep legacy field too
-            }
-
-            if (q.options != null && q.options.size() >= 2) {
-                fixed.add(q);
-            }
-        }
-
-        if (!fixed.isEmpty()) {
-            e.quiz = fixed;
-        } else {
-            Log.d(TAG, "hydrateQuizIfNeeded: quiz present but not usable in doc " + d.getId());
-        }
-    }
-
     // -------------------- Small helpers --------------------
 
     private static boolean isEmpty(String s){ return s == null || s.trim().isEmpty(); }
-    private static String str(Object o){ return o == null ? null : String.valueOf(o); }
-    private static Long numAsLong(Object o) {
-        if (o == null) return null;
-        if (o instanceof Number) return ((Number) o).longValue();
-        try { return Long.parseLong(String.valueOf(o)); } catch (Exception ignore) { return null; }
-    }
-
-    private static boolean looksHttp(String s) {
-        return s.startsWith("https://") || s.startsWith("http://")
-                || s.startsWith("https%3A%2F%2F") || s.startsWith("http%3A%2F%2F");
-    }
 
     private static String trimLeadingSlash(@Nullable String p) {
         if (p == null) return null;
@@ -238,45 +462,10 @@ public class EggRepository {
         return trimLeadingSlash(s);
     }
 
-    /**
-     * Normalize Firestore/Storage strings used as *URLs*:
-     * - trim quotes/whitespace
-     * - append alt=media to REST storage URLs (so Glide/MediaPlayer fetch the file directly)
-     */
-    private static String normalizeUrlOrPath(@Nullable String raw) {
-        if (raw == null) return null;
-        String s = raw.trim();
-        if (s.isEmpty()) return "";
-        // Trim accidental surrounding quotes
-        if (s.startsWith("\"") && s.endsWith("\"") && s.length() > 1) {
-            s = s.substring(1, s.length() - 1).trim();
-        }
-        if (s.startsWith("https://firebasestorage.googleapis.com/v0/")
-                && !s.contains("alt=media")) {
-            s = s + (s.contains("?") ? "&" : "?") + "alt=media";
-        }
-        return s;
-    }
-
     private static String normalizeEmptyToNull(@Nullable String s) {
         return (s == null || s.trim().isEmpty()) ? null : s.trim();
     }
 
-    private @Nullable StorageReference storageRefFrom(String urlOrPath) {
-        try {
-            if (TextUtils.isEmpty(urlOrPath)) return null;
-            if (urlOrPath.startsWith("gs://")) {
-                return FirebaseStorage.getInstance().getReferenceFromUrl(urlOrPath);
-            }
-            // treat as bucket path (allow leading '/')
-            return storageRoot.child(trimLeadingSlash(urlOrPath));
-        } catch (Exception e) {
-            Log.w(TAG, "storageRefFrom failed for: " + urlOrPath, e);
-            return null;
-        }
-    }
-
-    // (kept if you add geo queries later)
     private static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
         double R = 6371000d;
         double dLat = Math.toRadians(lat2 - lat1);
@@ -287,6 +476,40 @@ public class EggRepository {
         return 2 * R * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
     }
 
+    // -------------------- Stream callback types --------------------
+
+    /** Callback for {@link #streamEggs}; one call per mapped page. */
+    public interface EggPageConsumer { void onPage(List<EggIndexEntry> page); }
+
+    /** Callback for {@link #observeEggs}. */
+    public interface EggDeltaListener { void onDelta(EggDelta delta); }
+
+    /**
+     * One batch of catalog changes. A document that starts matching the cursor query shows up in
+     * {@code added} even if the caller already holds it, so consumers should upsert by id.
+     */
+    public static final class EggDelta {
+        public final List<EggIndexEntry> added;
+        public final List<EggIndexEntry> modified;
+        public final List<String> removedIds;
+        public final @Nullable Timestamp cursor;
+
+        EggDelta(List<EggIndexEntry> added, List<EggIndexEntry> modified, List<String> removedIds, @Nullable Timestamp cursor) {
+            this.added = Collections.unmodifiableList(added);
+            this.modified = Collections.unmodifiableList(modified);
+            this.removedIds = Collections.unmodifiableList(removedIds);
+            this.cursor = cursor;
+        }
+
+        /** added + modified, for consumers that simply upsert. */
+        public List<EggIndexEntry> upserts() {
+            List<EggIndexEntry> out = new ArrayList<>(added.size() + modified.size());
+            out.addAll(added);
+            out.addAll(modified);
+            return out;
+        }
+    }
+
     // -------------------- Optional convenience --------------------
 
     /** Returns true if this Cloud Anchor is probably expired (based on hostedAt + ttlDays). */
@@ -0,0 +1,235 @@
+package com.example.virtualtourar.data;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.GeoPoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Last synced egg catalog on disk, so the AR screen can render before Firestore answers
+ * (and at all when offline).
+ *
+ * Compact versioned binary file (DataOutputStream), written atomically. Holds the catalog's
+ * {@link EggIndexEntry} records: geo, altitude, anchor type, cloud id, first media refs and the
+ * compiled RenderDescriptor. Details (text, quiz, photo lists) are not stored; offline they come
+ * from Firestore's own cache.
+ */
+public final class EggSnapshotStore {
+    private static final String TAG = "EggSnapshotStore";
+    private static final String FILE_NAME = "egg_snapshot.bin";
+    private static final int MAGIC = 0x45474753; // "EGGS"
+    private static final int VERSION = 3; // 2: + RenderDescriptor, 3: index entries only
+
+    /** Serial on the shared IO pool: keeps writes ordered and off the main thread. */
+    private static final Executor IO = EggExecutors.newSerialExecutor(EggExecutors.IO);
+
+    private final AtomicFile file;
+
+    public EggSnapshotStore(@NonNull Context ctx) {
+        this.file = new AtomicFile(new File(ctx.getApplicationContext().getFilesDir(), FILE_NAME));
+    }
+
+    /** What was saved last time (empty snapshot if none / unreadable). */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), null);
+
+        public final List<EggIndexEntry> eggs;
+        public final @Nullable Timestamp syncCursor;
+
+        Snapshot(List<EggIndexEntry> eggs, @Nullable Timestamp syncCursor) {
+            this.eggs = Collections.unmodifiableList(eggs);
+            this.syncCursor = syncCursor;
+        }
+    }
+
+    // -------------------- Public API --------------------
+
+    public Task<Snapshot> loadAsync() { return Tasks.call(IO, this::load); }
+
+    public void saveAsync(@NonNull List<EggIndexEntry> eggs, @Nullable Timestamp syncCursor) {
+        final List<EggIndexEntry> copy = new ArrayList<>(eggs);
+        IO.execute(() -> save(copy, syncCursor));
+    }
+
+    /** Blocking read; call off the main thread. */
+    public Snapshot load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(file.openRead()))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(TAG, "Snapshot format mismatch; ignoring");
+                return Snapshot.EMPTY;
+            }
+            Timestamp cursor = readTs(in);
+            int n = in.readInt();
+            List<EggIndexEntry> out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) out.add(readEgg(in));
+            return new Snapshot(out, cursor);
+        } catch (FileNotFoundException none) {
+            return Snapshot.EMPTY;
+        } catch (Throwable t) {
+            Log.w(TAG, "Snapshot read failed; ignoring", t);
+            return Snapshot.EMPTY;
+        }
+    }
+
+    /** Blocking atomic write; call off the main thread. */
+    public void save(@NonNull List<EggIndexEntry> eggs, @Nullable Timestamp syncCursor) {
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeTs(out, syncCursor);
+            int n = 0;
+            for (EggIndexEntry e : eggs) if (e != null && e.id != null) n++;
+            out.writeInt(n);
+            for (EggIndexEntry e : eggs) if (e != null && e.id != null) writeEgg(out, e);
+            out.flush();
+            file.finishWrite(fos);
+        } catch (Throwable t) {
+            Log.w(TAG, "Snapshot write failed", t);
+            if (fos != null) file.failWrite(fos);
+        }
+    }
+
+    public void clear() { IO.execute(file::delete); }
+
+    // -------------------- Records --------------------
+
+    private static void writeEgg(DataOutputStream out, EggIndexEntry e) throws IOException {
+        writeStr(out, e.id);
+        writeStr(out, e.title);
+
+        out.writeBoolean(e.geo != null);
+        if (e.geo != null) {
+            out.writeDouble(e.geo.getLatitude());
+            out.writeDouble(e.geo.getLongitude());
+        }
+        writeStr(out, e.geohash);
+        writeDouble(out, e.alt);
+        writeDouble(out, e.heading);
+
+        writeStr(out, e.anchorType);
+        writeStr(out, e.cloudId);
+        writeLong(out, e.cloudTtlDays);
+        writeTs(out, e.cloudHostedAt);
+        writeTs(out, e.updatedAt);
+
+        writeStr(out, e.imageRef);
+        writeStr(out, e.audioRef);
+        out.writeBoolean(e.detailsInSubdoc);
+
+        RenderDescriptor rd = e.render;
+        out.writeByte(rd.kind);
+        out.writeFloat(rd.rotXDeg);
+        out.writeFloat(rd.rotYDeg);
+        out.writeFloat(rd.rotZDeg);
+        out.writeFloat(rd.scaleOverride);
+        out.writeBoolean(rd.hasQuaternion);
+        out.writeFloat(rd.qx);
+        out.writeFloat(rd.qy);
+        out.writeFloat(rd.qz);
+        out.writeFloat(rd.qw);
+        out.writeDouble(rd.heightAboveTerrain);
+    }
+
+    private static EggIndexEntry readEgg(DataInputStream in) throws IOException {
+        String id = readStr(in);
+        String title = readStr(in);
+
+        GeoPoint geo = in.readBoolean() ? new GeoPoint(in.readDouble(), in.readDouble()) : null;
+        String geohash = readStr(in);
+        Double alt = readDouble(in);
+        Double heading = readDouble(in);
+
+        String anchorType = readStr(in);
+        String cloudId = readStr(in);
+        Long cloudTtlDays = readLong(in);
+        Timestamp cloudHostedAt = readTs(in);
+        Timestamp updatedAt = readTs(in);
+
+        String imageRef = readStr(in);
+        String audioRef = readStr(in);
+        boolean detailsInSubdoc = in.readBoolean();
+
+        RenderDescriptor render = new RenderDescriptor(
+                in.readByte(),
+                in.readFloat(), in.readFloat(), in.readFloat(),
+                in.readFloat(),
+                in.readBoolean(),
+                in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                in.readDouble());
+
+        return new EggIndexEntry(id, title, geo, geohash, alt, heading, anchorType, cloudId,
+                cloudTtlDays, cloudHostedAt, updatedAt, imageRef, audioRef, detailsInSubdoc, render);
+    }
+
+    // -------------------- Nullable primitives --------------------
+
+    /** Length-prefixed UTF-8 (-1 = null); unlike writeUTF, not capped at 64 KB. */
+    private static void writeStr(DataOutputStream out, @Nullable String s) throws IOException {
+        if (s == null) { out.writeInt(-1); return; }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static @Nullable String readStr(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) return null;
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDouble(DataOutputStream out, @Nullable Double d) throws IOException {
+        out.writeBoolean(d != null);
+        if (d != null) out.writeDouble(d);
+    }
+
+    private static @Nullable Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    private static void writeLong(DataOutputStream out, @Nullable Long l) throws IOException {
+        out.writeBoolean(l != null);
+        if (l != null) out.writeLong(l);
+    }
+
+    private static @Nullable Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeTs(DataOutputStream out, @Nullable Timestamp t) throws IOException {
+        out.writeBoolean(t != null);
+        if (t != null) {
+            out.writeLong(t.getSeconds());
+            out.writeInt(t.getNanoseconds());
+        }
+    }
+
+    private static @Nullable Timestamp readTs(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new Timestamp(in.readLong(), in.readInt()) : null;
+    }
+}
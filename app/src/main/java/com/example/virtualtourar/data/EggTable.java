@@ -0,0 +1,251 @@
+package com.example.virtualtourar.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The catalog in parallel primitive arrays, one row per egg, for the per-frame draw, pick and
+ * placement loops: no GeoPoint / boxed Double chasing, no descriptor lookups, rows scanned in
+ * order. The {@link EggIndexEntry} objects are kept alongside for the cold paths (dialogs,
+ * notifications, geofences, snapshot).
+ *
+ * Immutable; {@link #patch} returns a new table, so a reference can be handed to the GL thread
+ * without locking.
+ */
+public final class EggTable {
+
+    // -------------------- flags --------------------
+    public static final int FLAG_HAS_GEO          = 1;
+    public static final int FLAG_HAS_ALT          = 1 << 1;
+    public static final int FLAG_HAS_HEADING      = 1 << 2;
+    public static final int FLAG_WANTS_CLOUD      = 1 << 3;
+    /** Type mentions GEO, or the egg has coordinates at all. */
+    public static final int FLAG_ALLOWS_GEO       = 1 << 4;
+    public static final int FLAG_HAS_CLOUD_ID     = 1 << 5;
+    public static final int FLAG_IDENTITY_ROTATION = 1 << 6;
+    public static final int FLAG_HAS_QUATERNION   = 1 << 7;
+    public static final int FLAG_HAS_HAT          = 1 << 8;
+
+    // -------------------- pose layout (floats per row in pose[]) --------------------
+    /** Model rotation Rx·Ry·Rz, column-major (16 floats, ready for multiplyMM at this offset). */
+    public static final int POSE_ROT   = 0;
+    /** Saved surface orientation x, y, z, w (valid with FLAG_HAS_QUATERNION). */
+    public static final int POSE_Q     = 16;
+    /** Scale override, or -1 for auto-scale by distance. */
+    public static final int POSE_SCALE = 20;
+    /** Yaw (deg) from the saved quaternion, NaN if none. */
+    public static final int POSE_YAW   = 21;
+    /** Height above terrain (m), NaN if none. */
+    public static final int POSE_HAT   = 22;
+    public static final int POSE_STRIDE = 24;
+
+    public static final EggTable EMPTY = new EggTable(new EggIndexEntry[0], 0);
+
+    public final int size;
+    public final String[] id;
+    /** NaN where the egg has no geo. */
+    public final double[] lat, lng;
+    /** Stored altitude (m) / heading (deg); NaN if absent. */
+    public final float[] alt, heading;
+    /** {@link RenderDescriptor#KIND_STAR} / {@link RenderDescriptor#KIND_PUZZLE}. */
+    public final byte[] kind;
+    public final int[] flags;
+    /** {@link #POSE_STRIDE} floats per row; see the POSE_* offsets. */
+    public final float[] pose;
+
+    private final EggIndexEntry[] entries;
+    private final List<EggIndexEntry> asList;
+    private final Map<String, Integer> rowById;
+
+    /** Fills every column from the first {@code n} entries. */
+    private EggTable(EggIndexEntry[] entries, int n) {
+        this.size = n;
+        this.entries = entries.length == n ? entries : Arrays.copyOf(entries, n);
+        id = new String[n];
+        lat = new double[n];
+        lng = new double[n];
+        alt = new float[n];
+        heading = new float[n];
+        kind = new byte[n];
+        flags = new int[n];
+        pose = new float[n * POSE_STRIDE];
+        rowById = new HashMap<>(Math.max(16, n * 4 / 3 + 1));
+        for (int row = 0; row < n; row++) fill(row, this.entries[row]);
+        asList = Collections.unmodifiableList(Arrays.asList(this.entries));
+    }
+
+    /** Copy of {@code base} grown to n rows; rows past base.size are left for the caller to fill. */
+    private EggTable(EggTable base, EggIndexEntry[] entries, int n) {
+        this.size = n;
+        this.entries = entries;
+        id = Arrays.copyOf(base.id, n);
+        lat = Arrays.copyOf(base.lat, n);
+        lng = Arrays.copyOf(base.lng, n);
+        alt = Arrays.copyOf(base.alt, n);
+        heading = Arrays.copyOf(base.heading, n);
+        kind = Arrays.copyOf(base.kind, n);
+        flags = Arrays.copyOf(base.flags, n);
+        pose = Arrays.copyOf(base.pose, n * POSE_STRIDE);
+        rowById = new HashMap<>(base.rowById);
+        asList = Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    public static EggTable build(@NonNull List<EggIndexEntry> eggs) {
+        EggIndexEntry[] rows = new EggIndexEntry[eggs.size()];
+        int n = 0;
+        // Last occurrence of an id wins, at the position of its first occurrence.
+        Map<String, Integer> at = new HashMap<>();
+        for (EggIndexEntry e : eggs) {
+            if (e == null || e.id == null) continue;
+            Integer prev = at.get(e.id);
+            if (prev != null) { rows[prev] = e; continue; }
+            at.put(e.id, n);
+            rows[n++] = e;
+        }
+        return n == 0 ? EMPTY : new EggTable(rows, n);
+    }
+
+    /**
+     * New table with {@code removedIds} dropped, then {@code upserts} applied (existing rows
+     * rewritten in place, new ones appended). Without removals the untouched rows are bulk-copied.
+     */
+    public EggTable patch(@NonNull Collection<EggIndexEntry> upserts, @NonNull Collection<String> removedIds) {
+        if (size == 0) return build(new ArrayList<>(upserts));
+        boolean removes = false;
+        for (String r : removedIds) if (rowById.containsKey(r)) { removes = true; break; }
+
+        if (removes) {
+            Set<String> gone = new HashSet<>(removedIds);
+            EggIndexEntry[] rows = new EggIndexEntry[size + upserts.size()];
+            Map<String, Integer> at = new HashMap<>();
+            int n = 0;
+            for (int r = 0; r < size; r++) {
+                if (gone.contains(id[r])) continue;
+                at.put(id[r], n);
+                rows[n++] = entries[r];
+            }
+            for (EggIndexEntry e : upserts) {
+                if (e == null || e.id == null) continue;
+                Integer prev = at.get(e.id);
+                if (prev != null) { rows[prev] = e; continue; }
+                at.put(e.id, n);
+                rows[n++] = e;
+            }
+            return n == 0 ? EMPTY : new EggTable(rows, n);
+        }
+
+        if (upserts.isEmpty()) return this;
+        int added = 0;
+        Set<String> fresh = new HashSet<>();
+        for (EggIndexEntry e : upserts) {
+            if (e != null && e.id != null && !rowById.containsKey(e.id) && fresh.add(e.id)) added++;
+        }
+
+        int n = size + added;
+        EggIndexEntry[] rows = Arrays.copyOf(entries, n);
+        EggTable next = new EggTable(this, rows, n);
+        int tail = size;
+        for (EggIndexEntry e : upserts) {
+            if (e == null || e.id == null) continue;
+            Integer row = next.rowById.get(e.id);
+            if (row == null) row = tail++;
+            rows[row] = e;
+            next.fill(row, e);
+        }
+        return next;
+    }
+
+    // -------------------- lookups (cold paths) --------------------
+
+    /** Row of this id, or -1. */
+    public int rowOf(@Nullable String eggId) {
+        Integer r = eggId != null ? rowById.get(eggId) : null;
+        return r != null ? r : -1;
+    }
+
+    public EggIndexEntry entry(int row) { return entries[row]; }
+
+    public @Nullable EggIndexEntry get(@Nullable String eggId) {
+        int r = rowOf(eggId);
+        return r >= 0 ? entries[r] : null;
+    }
+
+    /** All entries, in row order (immutable view). */
+    public List<EggIndexEntry> asList() { return asList; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public boolean has(int row, int flag) { return (flags[row] & flag) != 0; }
+
+    public boolean isPuzzle(int row) { return kind[row] == RenderDescriptor.KIND_PUZZLE; }
+
+    // -------------------- internals --------------------
+
+    private void fill(int row, EggIndexEntry e) {
+        id[row] = e.id.intern();
+        rowById.put(id[row], row);
+
+        int f = 0;
+        if (e.geo != null) {
+            lat[row] = e.geo.getLatitude();
+            lng[row] = e.geo.getLongitude();
+            f |= FLAG_HAS_GEO | FLAG_ALLOWS_GEO;
+        } else {
+            lat[row] = Double.NaN;
+            lng[row] = Double.NaN;
+        }
+        alt[row] = e.alt != null ? e.alt.floatValue() : Float.NaN;
+        if (e.alt != null) f |= FLAG_HAS_ALT;
+        heading[row] = e.heading != null ? e.heading.floatValue() : Float.NaN;
+        if (e.heading != null) f |= FLAG_HAS_HEADING;
+
+        String type = e.anchorType != null ? e.anchorType.toUpperCase(Locale.US) : "";
+        if (type.contains("CLOUD")) f |= FLAG_WANTS_CLOUD;
+        if (type.contains("GEO")) f |= FLAG_ALLOWS_GEO;
+        if (e.cloudId != null && !e.cloudId.isEmpty()) f |= FLAG_HAS_CLOUD_ID;
+
+        RenderDescriptor rd = e.render;
+        kind[row] = rd.kind;
+        if (rd.identityRotation) f |= FLAG_IDENTITY_ROTATION;
+        if (rd.hasQuaternion) f |= FLAG_HAS_QUATERNION;
+        if (rd.hasHeightAboveTerrain()) f |= FLAG_HAS_HAT;
+        flags[row] = f;
+
+        int p = row * POSE_STRIDE;
+        System.arraycopy(rd.rotation, 0, pose, p + POSE_ROT, 16);
+        pose[p + POSE_Q]     = rd.qx;
+        pose[p + POSE_Q + 1] = rd.qy;
+        pose[p + POSE_Q + 2] = rd.qz;
+        pose[p + POSE_Q + 3] = rd.qw;
+        pose[p + POSE_SCALE] = rd.scaleOverride;
+        pose[p + POSE_YAW]   = rd.savedYawDeg;
+        pose[p + POSE_HAT]   = (float) rd.heightAboveTerrain;
+        pose[p + POSE_STRIDE - 1] = 0f;
+    }
+
+    /** Growable int list for row query results; reuse one per thread to avoid allocation. */
+    public static final class Rows {
+        private int[] a = new int[32];
+        private int n;
+
+        public void clear() { n = 0; }
+        public int size() { return n; }
+        public int get(int i) { return a[i]; }
+
+        public void add(int row) {
+            if (n == a.length) a = Arrays.copyOf(a, n * 2);
+            a[n++] = row;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.virtualtourar.data;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageReference;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Single place that turns media references (http(s), content://, file://, gs:// or bucket
+ * paths) into something Glide / MediaPlayer can open.
+ *
+ * Storage references are resolved with getDownloadUrl() at most once per TTL: results sit in a
+ * bounded LRU keyed by the normalized reference, and concurrent callers for the same reference
+ * share one in-flight task. Direct URIs never touch the network or the cache.
+ */
+public final class MediaResolver {
+    private static final String TAG = "MediaResolver";
+
+    /** Resolved references kept (LRU); prefetchers should stay well below this. */
+    public static final int MAX_ENTRIES = 256;
+    /** Download-token URLs don't expire, but tokens can be revoked; re-resolve after this. */
+    private static final long DEFAULT_TTL_MS = 60 * 60_000L;
+    /** Treat signed URLs as stale this long before they actually expire. */
+    private static final long EXPIRY_MARGIN_MS = 60_000L;
+
+    /**
+     * Batch resolves in flight across all {@link #resolveAll} calls; leaves room for ARCore's
+     * VPS / cloud-anchor traffic during startup prefetch. Single {@link #resolve} calls bypass it.
+     */
+    public static final int MAX_BATCH_IN_FLIGHT = 3;
+    private static final int BATCH_MAX_ATTEMPTS = 3;
+    private static final long BACKOFF_BASE_MS = 500L;
+    private static final long BACKOFF_MAX_MS = 8_000L;
+
+    private static final MediaResolver INSTANCE = new MediaResolver();
+
+    public static MediaResolver get() { return INSTANCE; }
+
+    private final Map<String, Entry> cache = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, Task<Uri>> inFlight = new HashMap<>();
+
+    private long hits, misses, coalesced, failures;
+
+    // Batch scheduler state; main thread only.
+    private final PriorityQueue<Job> queue = new PriorityQueue<>(64, (a, b) -> {
+        int c = Double.compare(a.priority, b.priority);
+        return c != 0 ? c : Long.compare(a.seq, b.seq);
+    });
+    private int batchRunning;
+    private long jobSeq;
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private MediaResolver() {}
+
+    private static final class Entry {
+        final Uri uri; final long expiresAtMs;
+        Entry(Uri uri, long expiresAtMs) { this.uri = uri; this.expiresAtMs = expiresAtMs; }
+    }
+
+    // -------------------- Public API --------------------
+
+    /**
+     * Resolve any media reference into an openable Uri. Fails with IllegalArgumentException for
+     * empty or unparseable references.
+     */
+    public Task<Uri> resolve(@Nullable String urlOrPath) {
+        final String key = normalize(urlOrPath);
+        if (key == null) {
+            return Tasks.forException(new IllegalArgumentException("Empty media reference"));
+        }
+        if (isDirect(key)) return Tasks.forResult(Uri.parse(key));
+
+        synchronized (this) {
+            Uri cached = freshLocked(key);
+            if (cached != null) { hits++; return Tasks.forResult(cached); }
+
+            Task<Uri> pending = inFlight.get(key);
+            if (pending != null) { coalesced++; return pending; }
+
+            StorageReference ref = storageRefFrom(key);
+            if (ref == null) {
+                failures++;
+                return Tasks.forException(new IllegalArgumentException("Bad storage ref: " + key));
+            }
+            misses++;
+            Task<Uri> task = ref.getDownloadUrl();
+            inFlight.put(key, task);
+            task.addOnCompleteListener(t -> {
+                synchronized (MediaResolver.this) {
+                    inFlight.remove(key);
+                    if (t.isSuccessful() && t.getResult() != null) {
+                        cache.put(key, new Entry(t.getResult(), expiryFor(t.getResult())));
+                    } else {
+                        failures++;
+                    }
+                }
+            });
+            return task;
+        }
+    }
+
+    /**
+     * Resolve many references through the resolver-wide batch queue: at most
+     * {@link #MAX_BATCH_IN_FLIGHT} network calls across all batches, lowest priority value first
+     * (callers pass distance in meters, so the nearest egg of any batch goes next), FIFO among
+     * equals. Transient failures are retried with jittered exponential backoff; a reference that
+     * still fails yields null in its slot instead of failing the batch. The returned task always
+     * succeeds, with one entry per input.
+     *
+     * @param priorities one per ref, or null to keep list order behind already queued work
+     * @param listener optional per-item callback (main thread), fired as each slot settles
+     */
+    public Task<List<Uri>> resolveAll(@NonNull List<String> refs, @Nullable double[] priorities,
+                                      @Nullable ItemListener listener) {
+        if (priorities != null && priorities.length != refs.size()) {
+            throw new IllegalArgumentException("priorities.length != refs.size()");
+        }
+        Batch b = new Batch(refs, priorities, listener);
+        if (Looper.myLooper() == Looper.getMainLooper()) b.enqueueAll(); else MAIN.post(b::enqueueAll);
+        return b.done.getTask();
+    }
+
+    public Task<List<Uri>> resolveAll(@NonNull List<String> refs) {
+        return resolveAll(refs, null, null);
+    }
+
+    /** Per-item outcome of {@link #resolveAll}; uri is null if the item finally failed. */
+    public interface ItemListener { void onItem(int index, @Nullable Uri uri); }
+
+    /** Already-resolved Uri for this reference without any network call, or null. */
+    public @Nullable Uri peek(@Nullable String urlOrPath) {
+        String key = normalize(urlOrPath);
+        if (key == null) return null;
+        if (isDirect(key)) return Uri.parse(key);
+        synchronized (this) {
+            Uri cached = freshLocked(key);
+            if (cached != null) hits++;
+            return cached;
+        }
+    }
+
+    public synchronized void clear() { cache.clear(); }
+
+    // -------------------- Batch --------------------
+
+    /** One queued reference of a batch. */
+    private static final class Job {
+        final Batch batch; final int index; final double priority; final long seq;
+        int attempts;
+        Job(Batch batch, int index, double priority, long seq) {
+            this.batch = batch; this.index = index; this.priority = priority; this.seq = seq;
+        }
+    }
+
+    /** Results of one resolveAll call; its items run through the shared queue. Main thread only. */
+    private final class Batch {
+        final List<String> refs;
+        final @Nullable double[] priorities;
+        final @Nullable ItemListener listener;
+        final Uri[] results;
+        final TaskCompletionSource<List<Uri>> done = new TaskCompletionSource<>();
+        int settled = 0;
+
+        Batch(List<String> refs, @Nullable double[] priorities, @Nullable ItemListener listener) {
+            this.refs = new ArrayList<>(refs);
+            this.priorities = priorities == null ? null : priorities.clone();
+            this.listener = listener;
+            this.results = new Uri[this.refs.size()];
+        }
+
+        void enqueueAll() {
+            if (refs.isEmpty()) { finish(); return; }
+            for (int i = 0; i < refs.size(); i++) {
+                queue.add(new Job(this, i, priorities == null ? Double.MAX_VALUE : priorities[i], jobSeq++));
+            }
+            pumpQueue();
+        }
+
+        void settle(int i, @Nullable Uri uri) {
+            results[i] = uri;
+            if (listener != null) {
+                try { listener.onItem(i, uri); } catch (Throwable err) { Log.w(TAG, "Batch listener failed", err); }
+            }
+            if (++settled == refs.size()) finish();
+        }
+
+        void finish() {
+            List<Uri> out = new ArrayList<>(results.length);
+            Collections.addAll(out, results);
+            done.trySetResult(out);
+        }
+    }
+
+    private void pumpQueue() {
+        while (batchRunning < MAX_BATCH_IN_FLIGHT && !queue.isEmpty()) start(queue.poll());
+    }
+
+    private void start(Job job) {
+        batchRunning++;
+        job.attempts++;
+        final String ref = job.batch.refs.get(job.index);
+        resolve(ref).addOnCompleteListener(t -> {
+            batchRunning--;
+            if (t.isSuccessful()) {
+                job.batch.settle(job.index, t.getResult());
+            } else if (job.attempts < BATCH_MAX_ATTEMPTS && isTransient(t.getException())) {
+                // Free the slot while waiting; the retry re-enters the queue at its old position.
+                MAIN.postDelayed(() -> { queue.add(job); pumpQueue(); }, backoffMs(job.attempts));
+            } else {
+                Log.w(TAG, "Batch resolve gave up on " + ref, t.getException());
+                job.batch.settle(job.index, null);
+            }
+            pumpQueue();
+        });
+    }
+
+    /** Uniform in 0..base·2^(attempt-1) (capped): full jitter, so retries from many items don't line up. */
+    private static long backoffMs(int attempt) {
+        long ceil = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.max(0, attempt - 1));
+        return ThreadLocalRandom.current().nextLong(ceil + 1);
+    }
+
+    /** Bad references, missing objects and auth errors won't get better by retrying. */
+    private static boolean isTransient(@Nullable Exception e) {
+        if (e == null || e instanceof IllegalArgumentException) return false;
+        if (e instanceof StorageException) {
+            int code = ((StorageException) e).getErrorCode();
+            return code != StorageException.ERROR_OBJECT_NOT_FOUND
+                    && code != StorageException.ERROR_BUCKET_NOT_FOUND
+                    && code != StorageException.ERROR_PROJECT_NOT_FOUND
+                    && code != StorageException.ERROR_NOT_AUTHENTICATED
+                    && code != StorageException.ERROR_NOT_AUTHORIZED;
+        }
+        return true;
+    }
+
+    // -------------------- Counters --------------------
+
+    public synchronized long hitCount()       { return hits; }
+    public synchronized long missCount()      { return misses; }
+    public synchronized long coalescedCount() { return coalesced; }
+    public synchronized long failureCount()   { return failures; }
+    public synchronized int size()            { return cache.size(); }
+
+    /** One-line summary for logs / debug overlays. */
+    public synchronized String stats() {
+        return "media hits=" + hits + " misses=" + misses + " coalesced=" + coalesced
+                + " failures=" + failures + " cached=" + cache.size() + "/" + MAX_ENTRIES;
+    }
+
+    // -------------------- Normalization --------------------
+
+    /**
+     * Normalize Firestore/Storage strings used as URLs or bucket paths (null if blank):
+     *  - trim & strip accidental surrounding quotes
+     *  - append alt=media to Firebase REST storage URLs (so Glide/MediaPlayer fetch the file)
+     *  - strip a leading '/' from bucket paths; leave gs:// untouched
+     */
+    public static @Nullable String normalize(@Nullable String raw) {
+        if (raw == null) return null;
+        String s = raw.trim();
+        if (s.startsWith("\"") && s.endsWith("\"") && s.length() > 1) {
+            s = s.substring(1, s.length() - 1).trim();
+        }
+        if (s.isEmpty()) return null;
+        if (s.startsWith("https://firebasestorage.googleapis.com/v0/") && !s.contains("alt=media")) {
+            s = s + (s.contains("?") ? "&" : "?") + "alt=media";
+        }
+        if (!isDirect(s) && !s.startsWith("gs://") && s.startsWith("/")) {
+            s = s.substring(1);
+            if (s.isEmpty()) return null;
+        }
+        return s;
+    }
+
+    public static boolean looksHttp(@NonNull String s) {
+        return s.startsWith("https://") || s.startsWith("http://")
+                || s.startsWith("https%3A%2F%2F") || s.startsWith("http%3A%2F%2F");
+    }
+
+    private static boolean isDirect(@NonNull String s) {
+        return looksHttp(s) || s.startsWith("content://") || s.startsWith("file://");
+    }
+
+    // -------------------- internals --------------------
+
+    private @Nullable Uri freshLocked(String key) {
+        Entry e = cache.get(key);
+        if (e == null) return null;
+        if (System.currentTimeMillis() >= e.expiresAtMs) { cache.remove(key); return null; }
+        return e.uri;
+    }
+
+    private static @Nullable StorageReference storageRefFrom(String key) {
+        try {
+            if (key.startsWith("gs://")) return FirebaseStorage.getInstance().getReferenceFromUrl(key);
+            return FirebaseStorage.getInstance().getReference().child(key);
+        } catch (Exception e) {
+            Log.w(TAG, "storageRefFrom failed for: " + key, e);
+            return null;
+        }
+    }
+
+    /** Cache deadline: the URL's own signed expiry (minus a margin) when shorter than the default. */
+    private static long expiryFor(Uri uri) {
+        long now = System.currentTimeMillis();
+        long deadline = now + DEFAULT_TTL_MS;
+        long signed = signedExpiryMs(uri);
+        if (signed > 0) deadline = Math.min(deadline, signed - EXPIRY_MARGIN_MS);
+        return deadline;
+    }
+
+    /** Expiry of a V2 ("Expires") or V4 ("X-Goog-Date" + "X-Goog-Expires") signed URL, or -1. */
+    private static long signedExpiryMs(Uri uri) {
+        try {
+            String v2 = uri.getQueryParameter("Expires");
+            if (!TextUtils.isEmpty(v2)) return Long.parseLong(v2) * 1000L;
+
+            String date = uri.getQueryParameter("X-Goog-Date");
+            String secs = uri.getQueryParameter("X-Goog-Expires");
+            if (!TextUtils.isEmpty(date) && !TextUtils.isEmpty(secs)) {
+                SimpleDateFormat f = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
+                f.setTimeZone(TimeZone.getTimeZone("UTC"));
+                Date signedAt = f.parse(date);
+                if (signedAt != null) return signedAt.getTime() + Long.parseLong(secs) * 1000L;
+            }
+        } catch (Exception ignore) {}
+        return -1L;
+    }
+}
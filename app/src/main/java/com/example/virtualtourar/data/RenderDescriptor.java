@@ -0,0 +1,155 @@
+package com.example.virtualtourar.data;
+
+import android.opengl.Matrix;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-egg render/placement inputs, compiled once when an egg document is ingested so the
+ * draw, pick and placement paths only read primitives (no map lookups, boxing or reflection).
+ *
+ * Sources, first match wins: top-level document fields, then the optional "meta"/"extras" map.
+ */
+public final class RenderDescriptor {
+    private static final String TAG = "RenderDescriptor";
+
+    public static final byte KIND_STAR   = 0;
+    public static final byte KIND_PUZZLE = 1;
+
+    // OBJ orientation defaults
+    private static final float DEFAULT_ROT_X_DEG = 0f;
+    private static final float DEFAULT_ROT_Y_DEG = 0f;
+    private static final float DEFAULT_ROT_Z_DEG = 0f;
+
+    /** Sane range for a saved height-above-terrain; anything else is ignored (e.g. –80 m). */
+    private static final double HAT_MIN_M = -5.0, HAT_MAX_M = 15.0;
+
+    public final byte kind;
+
+    public final float rotXDeg, rotYDeg, rotZDeg;
+    /** Model rotation Rx·Ry·Rz (column-major, ready for multiplyMM). */
+    public final float[] rotation = new float[16];
+    public final boolean identityRotation;
+
+    /** Per-egg model scale, or -1 for "auto-scale by distance". */
+    public final float scaleOverride;
+
+    /** Saved local surface orientation (normalized xyzw); valid only if hasQuaternion. */
+    public final boolean hasQuaternion;
+    public final float qx, qy, qz, qw;
+    /** Yaw (deg, Y-up) derived from the saved quaternion, NaN if none. */
+    public final float savedYawDeg;
+
+    /** Height above terrain (m) for terrain anchors, NaN if none / out of range. */
+    public final double heightAboveTerrain;
+
+    RenderDescriptor(byte kind, float rx, float ry, float rz, float scaleOverride,
+                     boolean hasQuaternion, float qx, float qy, float qz, float qw,
+                     double heightAboveTerrain) {
+        this.kind = kind;
+        this.rotXDeg = rx; this.rotYDeg = ry; this.rotZDeg = rz;
+        this.scaleOverride = scaleOverride;
+        this.hasQuaternion = hasQuaternion;
+        this.qx = qx; this.qy = qy; this.qz = qz; this.qw = qw;
+        this.savedYawDeg = hasQuaternion ? yawDegFromQuaternionYUp(qx, qy, qz, qw) : Float.NaN;
+        this.heightAboveTerrain = heightAboveTerrain;
+
+        identityRotation = rx == 0f && ry == 0f && rz == 0f;
+        float[] tmp = new float[16];
+        Matrix.setIdentityM(rotation, 0);
+        if (!identityRotation) {
+            Matrix.setRotateM(tmp, 0, rz, 0f, 0f, 1f);
+            Matrix.multiplyMM(rotation, 0, tmp, 0, rotation, 0);
+            Matrix.setRotateM(tmp, 0, ry, 0f, 1f, 0f);
+            Matrix.multiplyMM(rotation, 0, tmp, 0, rotation, 0);
+            Matrix.setRotateM(tmp, 0, rx, 1f, 0f, 0f);
+            Matrix.multiplyMM(rotation, 0, tmp, 0, rotation, 0);
+        }
+    }
+
+    public boolean isPuzzle() { return kind == KIND_PUZZLE; }
+    public boolean hasHeightAboveTerrain() { return !Double.isNaN(heightAboveTerrain); }
+
+    /**
+     * Compile from an egg's anchorType plus its raw document data (null if unavailable, e.g. an
+     * entry built in code — then only anchorType contributes).
+     */
+    public static RenderDescriptor compile(@Nullable String id, @Nullable String anchorType,
+                                           @Nullable Map<String, Object> raw) {
+        Map<?, ?> meta = null;
+        if (raw != null) {
+            Object m = raw.get("meta");
+            if (!(m instanceof Map)) m = raw.get("extras");
+            if (m instanceof Map) meta = (Map<?, ?>) m;
+        }
+
+        byte kind = KIND_STAR;
+        if (anchorType != null && anchorType.toUpperCase(Locale.US).contains("GEO_PUZZLE")) {
+            kind = KIND_PUZZLE;
+        } else if (meta != null && meta.get("model") instanceof String
+                && "puzzle".equalsIgnoreCase((String) meta.get("model"))) {
+            kind = KIND_PUZZLE;
+        }
+
+        float rx = DEFAULT_ROT_X_DEG, ry = DEFAULT_ROT_Y_DEG, rz = DEFAULT_ROT_Z_DEG;
+        if (meta != null) {
+            rx = readFloat(meta, rx, "rotX", "modelRotX");
+            ry = readFloat(meta, ry, "rotY", "modelRotY");
+            rz = readFloat(meta, rz, "modelRotZ", "rotZ");
+        }
+
+        float scale = readFloat(raw, meta, Float.NaN, "scale", "modelScale");
+        float scaleOverride = (!Float.isNaN(scale) && scale > 0f) ? scale : -1f;
+
+        float qx = readFloat(raw, meta, Float.NaN, "localQx", "localHitQx", "hitQx");
+        float qy = readFloat(raw, meta, Float.NaN, "localQy", "localHitQy", "hitQy");
+        float qz = readFloat(raw, meta, Float.NaN, "localQz", "localHitQz", "hitQz");
+        float qw = readFloat(raw, meta, Float.NaN, "localQw", "localHitQw", "hitQw");
+        boolean hasQ = !Float.isNaN(qx) && !Float.isNaN(qy) && !Float.isNaN(qz) && !Float.isNaN(qw);
+        if (hasQ) {
+            float len = (float) Math.sqrt(qx*qx + qy*qy + qz*qz + qw*qw);
+            if (len > 1e-6f) { qx/=len; qy/=len; qz/=len; qw/=len; }
+        }
+
+        double hat = readFloat(raw, meta, Float.NaN, "heightAboveTerrain", "hat", "heightOverTerrain");
+        if (!Double.isNaN(hat) && (hat < HAT_MIN_M || hat > HAT_MAX_M)) {
+            Log.w(TAG, "Ignoring HAT=" + hat + "m (out of range) for " + id);
+            hat = Double.NaN;
+        }
+
+        return new RenderDescriptor(kind, rx, ry, rz, scaleOverride, hasQ, qx, qy, qz, qw, hat);
+    }
+
+    // -------------------- helpers --------------------
+
+    /** Top-level value first, then meta; def if neither holds a number. */
+    private static float readFloat(@Nullable Map<?, ?> raw, @Nullable Map<?, ?> meta, float def, String... names) {
+        if (raw != null) {
+            float v = readFloat(raw, Float.NaN, names);
+            if (!Float.isNaN(v)) return v;
+        }
+        return meta != null ? readFloat(meta, def, names) : def;
+    }
+
+    private static float readFloat(Map<?, ?> m, float def, String... names) {
+        for (String n : names) {
+            Object v = m.get(n);
+            if (v instanceof Number) return ((Number) v).floatValue();
+            if (v instanceof String) {
+                try { return Float.parseFloat(((String) v).trim()); } catch (Exception ignore) {}
+            }
+        }
+        return def;
+    }
+
+    private static float yawDegFromQuaternionYUp(float x, float y, float z, float w) {
+        double siny_cosp = 2.0 * (w * y + x * z);
+        double cosy_cosp = 1.0 - 2.0 * (y * y + z * z);
+        double yawRad = Math.atan2(siny_cosp, cosy_cosp);
+        return (float) Math.toDegrees(yawRad);
+    }
+}
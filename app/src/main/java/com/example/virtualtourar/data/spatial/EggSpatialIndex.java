@@ -0,0 +1,178 @@
+package com.example.virtualtourar.data.spatial;
+
+import androidx.annotation.NonNull;
+
+import com.example.virtualtourar.data.EggIndexEntry;
+import com.example.virtualtourar.data.EggTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable geohash-bucketed index over an {@link EggTable}'s rows.
+ * Build once per catalog change, then answer "eggs within R meters" and "k nearest eggs"
+ * by visiting only the cells around the query point instead of scanning every egg.
+ *
+ * Cells are the geohash grid at {@link #PRECISION}, keyed by their integer (row, column) so a
+ * query walks index ranges and binary-searches a sorted key array: the row-output
+ * {@link #withinRadius(double, double, double, EggTable.Rows)} allocates nothing, which keeps it
+ * usable once per frame.
+ *
+ * Never mutated after construction, so it can be read from the GL thread without locking; the
+ * table it was built from travels with it ({@link #table()}), so one volatile read gives a
+ * consistent pair.
+ */
+public final class EggSpatialIndex {
+
+    /** 7 chars ≈ 153m x 153m cells: a 40m query touches ~4 cells, a 150m query ~16. */
+    private static final int PRECISION = 7;
+
+    public static final EggSpatialIndex EMPTY = new EggSpatialIndex(EggTable.EMPTY);
+
+    private static final double CELL_H = GeoHash.cellHeightDeg(PRECISION);
+    private static final double CELL_W = GeoHash.cellWidthDeg(PRECISION);
+    private static final int LAT_CELLS = (int) Math.round(180d / CELL_H);
+    private static final int LNG_CELLS = (int) Math.round(360d / CELL_W);
+
+    private final EggTable table;
+    /** Sorted cell keys ({@link #key}) and, in the same order, the rows in each cell. */
+    private final long[] keys;
+    private final int[][] buckets;
+    /** Rows without coordinates (e.g. CLOUD-only); never returned by geo queries. */
+    private final int[] unlocated;
+
+    private EggSpatialIndex(@NonNull EggTable t) {
+        table = t;
+        Map<Long, EggTable.Rows> build = new HashMap<>();
+        EggTable.Rows noGeo = new EggTable.Rows();
+        for (int row = 0; row < t.size; row++) {
+            if (!t.has(row, EggTable.FLAG_HAS_GEO)) { noGeo.add(row); continue; }
+            Long key = key(latCell(t.lat[row]), lngCell(t.lng[row]));
+            EggTable.Rows bucket = build.get(key);
+            if (bucket == null) { bucket = new EggTable.Rows(); build.put(key, bucket); }
+            bucket.add(row);
+        }
+        keys = new long[build.size()];
+        int n = 0;
+        for (Long k : build.keySet()) keys[n++] = k;
+        Arrays.sort(keys);
+        buckets = new int[keys.length][];
+        for (int i = 0; i < keys.length; i++) buckets[i] = toArray(build.get(keys[i]));
+        unlocated = toArray(noGeo);
+    }
+
+    public static EggSpatialIndex build(@NonNull EggTable table) {
+        return table.isEmpty() ? EMPTY : new EggSpatialIndex(table);
+    }
+
+    /** The rows this index refers to. */
+    public EggTable table() { return table; }
+
+    /** Number of indexed eggs (located + unlocated). */
+    public int size() { return table.size; }
+
+    /** Appends the rows that have no geo and therefore can't be found by location. */
+    public void unlocated(@NonNull EggTable.Rows out) {
+        for (int row : unlocated) out.add(row);
+    }
+
+    /** Replaces {@code out} with the located rows whose distance to (lat,lng) is ≤ radiusM (unordered). */
+    public void withinRadius(double lat, double lng, double radiusM, @NonNull EggTable.Rows out) {
+        out.clear();
+        if (keys.length == 0 || radiusM < 0) return;
+        final double[] la = table.lat, ln = table.lng;
+        if (estimateCells(lat, radiusM) >= keys.length) {
+            for (int[] bucket : buckets) collect(bucket, lat, lng, radiusM, la, ln, out);
+            return;
+        }
+        double dLat = GeoHash.metersToLatDeg(radiusM);
+        double dLng = GeoHash.metersToLngDeg(radiusM, lat);
+        int r0 = latCell(lat - dLat), r1 = latCell(lat + dLat);
+        int c0 = (int) Math.floor((lng - dLng + 180d) / CELL_W), c1 = (int) Math.floor((lng + dLng + 180d) / CELL_W);
+        if (c1 - c0 + 1 >= LNG_CELLS) { c0 = 0; c1 = LNG_CELLS - 1; }
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int i = Arrays.binarySearch(keys, key(r, Math.floorMod(c, LNG_CELLS)));
+                if (i >= 0) collect(buckets[i], lat, lng, radiusM, la, ln, out);
+            }
+        }
+    }
+
+    private static void collect(int[] bucket, double lat, double lng, double radiusM,
+                                double[] la, double[] ln, EggTable.Rows out) {
+        for (int row : bucket) {
+            if (GeoHash.distanceMeters(lat, lng, la[row], ln[row]) <= radiusM) out.add(row);
+        }
+    }
+
+    /** Located entries within radiusM of (lat,lng) (unordered); allocates, for cold paths. */
+    public List<EggIndexEntry> withinRadius(double lat, double lng, double radiusM) {
+        EggTable.Rows rows = new EggTable.Rows();
+        withinRadius(lat, lng, radiusM, rows);
+        List<EggIndexEntry> out = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) out.add(table.entry(rows.get(i)));
+        return out;
+    }
+
+    /** Up to k located eggs nearest to (lat,lng), closest first. */
+    public List<EggIndexEntry> nearest(double lat, double lng, int k) {
+        if (keys.length == 0 || k <= 0) return new ArrayList<>();
+
+        double radius = GeoHash.cellMinEdgeMeters(PRECISION, lat);
+        EggTable.Rows rows = new EggTable.Rows();
+        while (true) {
+            boolean coversAll = estimateCells(lat, radius) >= keys.length;
+            withinRadius(lat, lng, coversAll ? Double.MAX_VALUE : radius, rows);
+            List<Hit> hits = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                hits.add(new Hit(row, GeoHash.distanceMeters(lat, lng, table.lat[row], table.lng[row])));
+            }
+            // Anything inside the circle is closer than anything outside it, so k hits here are the global k.
+            if (hits.size() >= k || coversAll) {
+                Collections.sort(hits, (a, b) -> Double.compare(a.d, b.d));
+                List<EggIndexEntry> out = new ArrayList<>(Math.min(k, hits.size()));
+                for (int i = 0; i < hits.size() && i < k; i++) out.add(table.entry(hits.get(i).row));
+                return out;
+            }
+            radius *= 2;
+        }
+    }
+
+    // -------------------- internals --------------------
+
+    private static int latCell(double lat) {
+        return Math.min(LAT_CELLS - 1, Math.max(0, (int) Math.floor((GeoHash.clampLat(lat) + 90d) / CELL_H)));
+    }
+
+    private static int lngCell(double lng) {
+        return Math.min(LNG_CELLS - 1, (int) Math.floor((GeoHash.wrapLng(lng) + 180d) / CELL_W));
+    }
+
+    /** Same cell as {@code GeoHash.encode(lat, lng, PRECISION)}, as a number. */
+    private static long key(int latCell, int lngCell) {
+        return ((long) latCell << 32) | lngCell;
+    }
+
+    /** Rough number of cells covering the query's bounding box. */
+    private static double estimateCells(double lat, double radiusM) {
+        double rows = GeoHash.metersToLatDeg(radiusM) * 2 / GeoHash.cellHeightDeg(PRECISION) + 1;
+        double cols = GeoHash.metersToLngDeg(radiusM, lat) * 2 / GeoHash.cellWidthDeg(PRECISION) + 1;
+        return rows * cols;
+    }
+
+    private static int[] toArray(EggTable.Rows rows) {
+        int[] a = new int[rows.size()];
+        for (int i = 0; i < a.length; i++) a[i] = rows.get(i);
+        return a;
+    }
+
+    private static final class Hit {
+        final int row; final double d;
+        Hit(int row, double d) { this.row = row; this.d = d; }
+    }
+}
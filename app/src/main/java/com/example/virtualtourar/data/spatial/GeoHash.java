@@ -0,0 +1,134 @@
+package com.example.virtualtourar.data.spatial;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Minimal geohash codec + geo math used by the spatial index and by geohash range queries.
+ * Cells are the standard base32 geohash grid (interleaved lng/lat bits).
+ */
+public final class GeoHash {
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final double EARTH_RADIUS_M = 6371000d;
+    private static final double METERS_PER_DEG_LAT = 111320d;
+
+    /** Geohash strings longer than this are never useful for our radii (≈ 4.8m cells). */
+    public static final int MAX_PRECISION = 9;
+
+    private GeoHash() {}
+
+    /** Encode lat/lng into a geohash of {@code precision} characters (1..12). */
+    public static String encode(double lat, double lng, int precision) {
+        double latMin = -90, latMax = 90;
+        double lngMin = -180, lngMax = 180;
+        lat = clampLat(lat);
+        lng = wrapLng(lng);
+
+        StringBuilder sb = new StringBuilder(precision);
+        boolean evenBit = true; // even bits encode longitude
+        int bit = 0, ch = 0;
+        while (sb.length() < precision) {
+            if (evenBit) {
+                double mid = (lngMin + lngMax) / 2;
+                if (lng >= mid) { ch = (ch << 1) | 1; lngMin = mid; }
+                else            { ch = ch << 1;       lngMax = mid; }
+            } else {
+                double mid = (latMin + latMax) / 2;
+                if (lat >= mid) { ch = (ch << 1) | 1; latMin = mid; }
+                else            { ch = ch << 1;       latMax = mid; }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                sb.append(BASE32.charAt(ch));
+                bit = 0; ch = 0;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Geohash prefixes whose cells together cover the circle (lat,lng,radiusM).
+     * Picks the finest precision whose cells are at least radiusM on every side, so the circle's
+     * bounding box touches at most 3x3 cells; returns at most 9 prefixes (often 1–4).
+     * An empty-string prefix means "everything" (radius too large to bucket).
+     */
+    public static List<String> coveringPrefixes(double lat, double lng, double radiusM) {
+        double dLat = metersToLatDeg(radiusM);
+        double worstLat = Math.min(90d, Math.abs(lat) + dLat); // cells are narrowest here
+
+        int precision = 0;
+        for (int p = MAX_PRECISION; p >= 1; p--) {
+            if (cellMinEdgeMeters(p, worstLat) >= radiusM) { precision = p; break; }
+        }
+        List<String> out = new ArrayList<>();
+        if (precision == 0) { out.add(""); return out; }
+
+        // A cell at least radiusM wide can't fall between samples spaced radiusM apart.
+        double dLng = metersToLngDeg(radiusM, worstLat);
+        Set<String> seen = new LinkedHashSet<>();
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                seen.add(encode(lat + i * dLat, lng + j * dLng, precision));
+            }
+        }
+        out.addAll(seen);
+        return out;
+    }
+
+    /** Height of a cell in degrees of latitude. */
+    public static double cellHeightDeg(int precision) {
+        int latBits = (5 * precision) / 2;
+        return 180d / (1L << latBits);
+    }
+
+    /** Width of a cell in degrees of longitude. */
+    public static double cellWidthDeg(int precision) {
+        int lngBits = (5 * precision + 1) / 2;
+        return 360d / (1L << lngBits);
+    }
+
+    /** Smallest cell edge (meters) at the given latitude. */
+    public static double cellMinEdgeMeters(int precision, double lat) {
+        double h = cellHeightDeg(precision) * METERS_PER_DEG_LAT;
+        double w = cellWidthDeg(precision) * metersPerDegLng(lat);
+        return Math.min(h, w);
+    }
+
+    /** Degrees of latitude spanned by {@code meters}. */
+    public static double metersToLatDeg(double meters) {
+        return meters / METERS_PER_DEG_LAT;
+    }
+
+    /** Degrees of longitude spanned by {@code meters} at latitude {@code lat}. */
+    public static double metersToLngDeg(double meters, double lat) {
+        double m = metersPerDegLng(lat);
+        return m < 1e-6 ? 360d : meters / m;
+    }
+
+    /** Great-circle distance (haversine). */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat/2)*Math.sin(dLat/2)
+                + Math.cos(Math.toRadians(lat1))*Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon/2)*Math.sin(dLon/2);
+        return 2 * EARTH_RADIUS_M * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    static double clampLat(double lat) {
+        return Math.max(-90d, Math.min(90d, lat));
+    }
+
+    static double wrapLng(double lng) {
+        if (lng >= -180d && lng < 180d) return lng;
+        double w = ((lng + 180d) % 360d + 360d) % 360d - 180d;
+        return w;
+    }
+
+    private static double metersPerDegLng(double lat) {
+        return METERS_PER_DEG_LAT * Math.cos(Math.toRadians(clampLat(lat)));
+    }
+}
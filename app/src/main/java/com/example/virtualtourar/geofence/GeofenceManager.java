@@ -1,43 +1,71 @@
 package com.example.virtualtourar.geofence;
 
 import android.Manifest;
+import android.annotation.SuppressLint;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.location.Location;
 import android.os.Build;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 
-import com.example.virtualtourar.data.EggEntry;
+import com.example.virtualtourar.data.EggExecutors;
+import com.example.virtualtourar.data.EggIndexEntry;
+import com.example.virtualtourar.data.EggRepository;
+import com.example.virtualtourar.data.spatial.GeoHash;
 import com.google.android.gms.location.Geofence;
 import com.google.android.gms.location.GeofencingClient;
 import com.google.android.gms.location.GeofencingRequest;
 import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * Central place to (re)register proximity geofences that keep working
  * when the app is backgrounded or killed.
+ *
+ * The pool is first turned into fences by {@link GeofenceProfiles} (dense clusters share one
+ * fence; radius and dwell follow local density). Play Services allows 100 fences per app, so
+ * only the {@link #MAX_FENCES} fences nearest the user are registered, plus one EXIT-only
+ * "re-center" fence around the user. Its radius is the gap to the nearest fence left out, but
+ * never below {@link #RECENTER_MIN_RADIUS_M}: in dense areas a left-out fence can then come into
+ * range shortly before the user leaves it, which is accepted over GPS jitter firing EXIT on a
+ * tiny fence. Leaving it re-selects the nearest set from the stored pool (see
+ * {@link GeofenceBroadcastReceiver}), so coverage follows the user without polling location.
  */
 public class GeofenceManager {
+    private static final String TAG = "GeofenceManager";
 
     /** Notification channel used by GeofenceBroadcastReceiver. */
     public static final String CHANNEL_ID = "eggs_proximity_channel";
 
-    /** Safe cap under the Play Services per-app geofence limit (100). */
+    /** Request id of the re-center fence; never an egg id. */
+    public static final String RECENTER_FENCE_ID = "__recenter__";
+
+    /** Egg/cluster fences per registration; +1 re-center fence stays under the Play Services limit (100). */
     private static final int MAX_FENCES = 95;
 
-    /** Enter if within this radius. Keep this modest or you’ll get spam. */
-    private static final float RADIUS_METERS = 120f;
+    /** Play Services' reliable minimum; smaller re-center fences flap on GPS jitter. */
+    private static final float RECENTER_MIN_RADIUS_M = 150f;
 
-    /** How long you must loiter inside the fence before DWELL triggers. */
-    private static final int DWELL_MS = 30_000;
+    /**
+     * Registrations run here one at a time, blocking on Play Services, so diffs never interleave.
+     * Own thread: a slow IPC must not hold up the shared IO pool (e.g. the cold-start snapshot read).
+     */
+    private static final Executor REGISTRAR = EggExecutors.newSingleThread("geofence-registrar");
 
     private final Context context;
     private final GeofencingClient client;
@@ -52,77 +80,168 @@ public class GeofenceManager {
     }
 
     /**
-     * Registers geofences for the provided eggs.
-     * Call this after you’ve fetched the list and you have location permissions.
+     * Replaces the stored pool with these eggs and registers the ones nearest the last known
+     * location. Call this after you’ve fetched the list and you have location permissions.
      */
-    public void registerForEggs(@NonNull List<EggEntry> eggs) {
-        if (eggs.isEmpty()) return;
-
-        // Build fences + side metadata we’ll read in the receiver.
-        final List<Geofence> fences = new ArrayList<>();
-        final Map<String, NearbyEggStore.EggInfo> meta = new HashMap<>();
-
-        int added = 0;
-        for (EggEntry e : eggs) {
+    public Task<Void> registerForEggs(@NonNull List<EggIndexEntry> eggs) {
+        final Map<String, NearbyEggStore.EggInfo> pool = new LinkedHashMap<>();
+        for (EggIndexEntry e : eggs) {
             if (e == null || e.id == null || e.geo == null) continue;
-            if (added >= MAX_FENCES) break;
-
-            fences.add(new Geofence.Builder()
-                    .setRequestId(e.id)
-                    .setCircularRegion(
-                            e.geo.getLatitude(),
-                            e.geo.getLongitude(),
-                            RADIUS_METERS
-                    )
-                    .setTransitionTypes(
-                            Geofence.GEOFENCE_TRANSITION_ENTER
-                                    | Geofence.GEOFENCE_TRANSITION_DWELL
-                    )
-                    .setLoiteringDelay(DWELL_MS)
-                    .setExpirationDuration(Geofence.NEVER_EXPIRE)
-                    .build());
-
-            meta.put(e.id, new NearbyEggStore.EggInfo(
-                    e.title,
-                    e.geo.getLatitude(),
-                    e.geo.getLongitude()
-            ));
-            added++;
+            pool.put(e.id, new NearbyEggStore.EggInfo(e.title, e.geo.getLatitude(), e.geo.getLongitude()));
         }
+        if (pool.isEmpty()) return Tasks.forResult(null);
 
-        if (fences.isEmpty()) return;
+        // Persist metadata for the broadcast receiver to look up titles and re-center from.
+        NearbyEggStore.save(context, pool);
+        return lastLocation().continueWith(REGISTRAR, t -> register(pool, t.getResult()));
+    }
+
+    /** Re-select the nearest set from the stored pool around {@code here} (null: last known location). */
+    public Task<Void> rotate(@Nullable Location here) {
+        Task<Location> where = here != null ? Tasks.forResult(here) : lastLocation();
+        return where.continueWith(REGISTRAR, t -> register(NearbyEggStore.load(context), t.getResult()));
+    }
 
-        // Persist metadata for the broadcast receiver to look up titles, etc.
-        NearbyEggStore.save(context, meta);
+    /**
+     * The user left the re-center fence: rotate from the stored pool right away (works offline),
+     * then top the pool up with the eggs around the new position and rotate again. The pool is
+     * trimmed to the fetch radius around the new position, so it doesn't grow with every place
+     * the user has been.
+     */
+    public Task<Void> recenter(@Nullable Location here) {
+        return rotate(here).continueWithTask(t -> {
+            if (here == null) return Tasks.forResult(null);
+            return new EggRepository().fetchEggsAround(here, EggRepository.NEARBY_CATALOG_RADIUS_M)
+                    .continueWith(REGISTRAR, ft -> {
+                        List<EggIndexEntry> fresh = ft.getResult();
+                        Map<String, NearbyEggStore.EggInfo> pool = new LinkedHashMap<>();
+                        for (Map.Entry<String, NearbyEggStore.EggInfo> kept : NearbyEggStore.load(context).entrySet()) {
+                            NearbyEggStore.EggInfo info = kept.getValue();
+                            if (GeoHash.distanceMeters(here.getLatitude(), here.getLongitude(), info.lat, info.lng)
+                                    <= EggRepository.NEARBY_CATALOG_RADIUS_M) {
+                                pool.put(kept.getKey(), info);
+                            }
+                        }
+                        for (EggIndexEntry e : fresh) {
+                            if (e == null || e.id == null || e.geo == null) continue;
+                            pool.put(e.id, new NearbyEggStore.EggInfo(e.title, e.geo.getLatitude(), e.geo.getLongitude()));
+                        }
+                        NearbyEggStore.save(context, pool);
+                        return register(pool, here);
+                    });
+        });
+    }
+
+    /** Removes all geofences registered through this manager (idempotent). */
+    public void clearAll() {
+        REGISTRAR.execute(() -> {
+            GeofenceRegistry.clear(context);
+            client.removeGeofences(getGeofencePendingIntent());
+        });
+    }
+
+    /** Fences are known to be gone (e.g. location turned off); the next registration re-adds all. */
+    public static void forgetRegistered(@NonNull Context ctx) {
+        final Context app = ctx.getApplicationContext();
+        REGISTRAR.execute(() -> GeofenceRegistry.clear(app));
+    }
 
-        final GeofencingRequest request = new GeofencingRequest.Builder()
-                .setInitialTrigger(
-                        GeofencingRequest.INITIAL_TRIGGER_ENTER
-                                | GeofencingRequest.INITIAL_TRIGGER_DWELL
-                )
-                .addGeofences(fences)
-                .build();
+    // -------------------- internals --------------------
 
-        // Runtime permission guard — background delivery still requires
-        // ACCESS_BACKGROUND_LOCATION in settings, but addGeofences only checks fine location.
+    /**
+     * Nearest MAX_FENCES of the planned fences (any MAX_FENCES without a position) + the re-center fence,
+     * applied as a diff against {@link GeofenceRegistry}: fences no longer wanted are removed by
+     * id, new or changed ones are added (same id replaces), unchanged ones are left alone — so
+     * there is never a moment with no fences. Runs on {@link #REGISTRAR}, one at a time.
+     */
+    @SuppressLint("MissingPermission") // checked below
+    private Void register(@NonNull Map<String, NearbyEggStore.EggInfo> pool, @Nullable Location here)
+            throws ExecutionException, InterruptedException {
+        if (pool.isEmpty()) return null;
         if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
                 != PackageManager.PERMISSION_GRANTED) {
-            return;
+            return null;
+        }
+
+        final List<GeofenceRegistry.Spec> fences = GeofenceProfiles.plan(pool);
+        final double[] gap = new double[fences.size()]; // to the fence edge
+        Integer[] order = new Integer[fences.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            if (here != null) {
+                GeofenceRegistry.Spec f = fences.get(i);
+                gap[i] = GeoHash.distanceMeters(here.getLatitude(), here.getLongitude(), f.lat, f.lng) - f.radius;
+            }
+        }
+        if (here != null) Arrays.sort(order, (a, b) -> Double.compare(gap[a], gap[b]));
+
+        final Map<String, GeofenceRegistry.Spec> wanted = new LinkedHashMap<>();
+        final int n = Math.min(MAX_FENCES, order.length);
+        for (int i = 0; i < n; i++) {
+            GeofenceRegistry.Spec f = fences.get(order[i]);
+            wanted.put(f.id, f);
+        }
+
+        // Only needed when some fences were left out; without a position we can't center it.
+        if (here != null && order.length > n) {
+            float radius = (float) Math.max(RECENTER_MIN_RADIUS_M, gap[order[n]]);
+            wanted.put(RECENTER_FENCE_ID, new GeofenceRegistry.Spec(RECENTER_FENCE_ID,
+                    here.getLatitude(), here.getLongitude(), radius, Geofence.GEOFENCE_TRANSITION_EXIT, 0));
+        }
+
+        final Map<String, GeofenceRegistry.Spec> current = GeofenceRegistry.load(context);
+        final List<String> stale = new ArrayList<>();
+        for (String id : current.keySet()) if (!wanted.containsKey(id)) stale.add(id);
+        final List<Geofence> fresh = new ArrayList<>();
+        for (GeofenceRegistry.Spec s : wanted.values()) {
+            if (!s.equals(current.get(s.id))) fresh.add(s.toGeofence());
         }
+        if (stale.isEmpty() && fresh.isEmpty()) return null;
+        Log.d(TAG, "Geofences: +" + fresh.size() + " -" + stale.size() + " (" + (wanted.size() - fresh.size())
+                + " unchanged; " + n + " of " + order.length + " fences for " + pool.size() + " eggs)");
 
-        // Remove previous registrations tied to this PendingIntent to avoid duplicates,
-        // then add the fresh set.
-        client.removeGeofences(getGeofencePendingIntent())
-                .addOnCompleteListener(t -> client.addGeofences(request, getGeofencePendingIntent())
-                        .addOnSuccessListener(unused -> {
-                            // OK
-                        })
-                        .addOnFailureListener(Throwable::printStackTrace));
+        // Record the removal before it happens: if it fails midway, the next diff re-adds rather
+        // than trusting fences that may be gone.
+        if (!stale.isEmpty()) {
+            Map<String, GeofenceRegistry.Spec> remaining = new LinkedHashMap<>(current);
+            remaining.keySet().removeAll(stale);
+            GeofenceRegistry.save(context, remaining);
+            try {
+                Tasks.await(client.removeGeofences(stale));
+            } catch (ExecutionException e) {
+                Log.w(TAG, "removeGeofences failed", e);
+            }
+        }
+        if (!fresh.isEmpty()) {
+            final GeofencingRequest request = new GeofencingRequest.Builder()
+                    .setInitialTrigger(
+                            GeofencingRequest.INITIAL_TRIGGER_ENTER
+                                    | GeofencingRequest.INITIAL_TRIGGER_DWELL
+                    )
+                    .addGeofences(fresh)
+                    .build();
+            try {
+                Tasks.await(client.addGeofences(request, getGeofencePendingIntent()));
+            } catch (ExecutionException e) {
+                // Unknown which (if any) landed: forget the record so the next pass re-adds all.
+                GeofenceRegistry.clear(context);
+                Log.w(TAG, "addGeofences failed", e);
+                throw e;
+            }
+        }
+        GeofenceRegistry.save(context, wanted);
+        return null;
     }
 
-    /** Removes all geofences registered through this manager (idempotent). */
-    public void clearAll() {
-        client.removeGeofences(getGeofencePendingIntent());
+    /** Last known location, or null (no permission / no fix); never fails. */
+    @SuppressLint("MissingPermission") // checked here
+    private Task<Location> lastLocation() {
+        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            return Tasks.forResult(null);
+        }
+        return LocationServices.getFusedLocationProviderClient(context).getLastLocation()
+                .continueWith(t -> t.isSuccessful() ? t.getResult() : null);
     }
 
     /**
@@ -134,7 +253,8 @@ public class GeofenceManager {
 
         Intent intent = new Intent(context, GeofenceBroadcastReceiver.class);
         int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-        if (Build.VERSION.SDK_INT >= 23) flags |= PendingIntent.FLAG_IMMUTABLE;
+        // Geofencing fills in the transition extras, so the intent must stay mutable on S+.
+        if (Build.VERSION.SDK_INT >= 31) flags |= PendingIntent.FLAG_MUTABLE;
 
         geofencePendingIntent = PendingIntent.getBroadcast(
                 context,
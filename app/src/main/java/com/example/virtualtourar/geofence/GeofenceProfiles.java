@@ -0,0 +1,142 @@
+package com.example.virtualtourar.geofence;
+
+import androidx.annotation.NonNull;
+
+import com.example.virtualtourar.data.spatial.GeoHash;
+import com.google.android.gms.location.Geofence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the egg pool into fences sized by local density:
+ *
+ *  - Eggs within {@link #LINK_M} of a seed egg share one fence, centered on their centroid and
+ *    just large enough to cover each member's {@link #BASE_RADIUS_M} zone. Its request id is
+ *    {@link #CLUSTER_PREFIX} + seed id; the members travel in the spec (see GeofenceRegistry).
+ *  - Remaining eggs get their own fence, radius half the gap to the nearest other egg, clamped,
+ *    so neighbouring fences barely overlap.
+ *  - Dwell grows with radius: walking across a bigger fence takes longer.
+ *
+ * Seeds are taken densest first (ties by id), independent of the user's position, so the same
+ * pool always yields the same fences and re-registration diffs stay small.
+ */
+final class GeofenceProfiles {
+    static final String CLUSTER_PREFIX = "__cluster__:";
+
+    /** Zone around each egg that should trigger; the old fixed per-egg radius. */
+    static final float BASE_RADIUS_M = 120f;
+    private static final float MIN_RADIUS_M = 80f;
+    private static final float MAX_SINGLE_RADIUS_M = 150f;
+    /** Eggs at most this far from a seed are merged into its fence. */
+    private static final double LINK_M = 150d;
+
+    private static final int MIN_DWELL_MS = 30_000;
+    private static final int MAX_DWELL_MS = 120_000;
+    private static final int DWELL_MS_PER_M = 250;
+
+    private static final int TRANSITIONS =
+            Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_DWELL;
+
+    private GeofenceProfiles() {}
+
+    static boolean isCluster(@NonNull String requestId) {
+        return requestId.startsWith(CLUSTER_PREFIX);
+    }
+
+    /** Fences covering every egg of the pool, in no particular order. */
+    static List<GeofenceRegistry.Spec> plan(@NonNull Map<String, NearbyEggStore.EggInfo> pool) {
+        final int n = pool.size();
+        final String[] ids = pool.keySet().toArray(new String[0]);
+        final double[] lat = new double[n], lng = new double[n];
+        double maxAbsLat = 0;
+        for (int i = 0; i < n; i++) {
+            NearbyEggStore.EggInfo e = pool.get(ids[i]);
+            lat[i] = e.lat;
+            lng[i] = e.lng;
+            maxAbsLat = Math.max(maxAbsLat, Math.abs(e.lat));
+        }
+        // Cells at least LINK_M wide everywhere in the pool, so the 3×3 lookup never misses.
+        final double cellLat = GeoHash.metersToLatDeg(LINK_M);
+        final double cellLng = GeoHash.metersToLngDeg(LINK_M, Math.min(89d, maxAbsLat));
+
+        // Neighbours within LINK_M (grid of LINK_M cells, 3×3 lookup) and nearest-other distance.
+        final int[][] near = new int[n][];
+        final double[] nearest = new double[n];
+        Map<Long, List<Integer>> grid = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            grid.computeIfAbsent(cell(lat[i], lng[i], cellLat, cellLng, 0, 0), k -> new ArrayList<>()).add(i);
+        }
+        for (int i = 0; i < n; i++) {
+            List<Integer> found = new ArrayList<>();
+            nearest[i] = Double.POSITIVE_INFINITY;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    List<Integer> c = grid.get(cell(lat[i], lng[i], cellLat, cellLng, dx, dy));
+                    if (c == null) continue;
+                    for (int j : c) {
+                        if (j == i) continue;
+                        double d = GeoHash.distanceMeters(lat[i], lng[i], lat[j], lng[j]);
+                        nearest[i] = Math.min(nearest[i], d);
+                        if (d <= LINK_M) found.add(j);
+                    }
+                }
+            }
+            near[i] = new int[found.size()];
+            for (int k = 0; k < near[i].length; k++) near[i][k] = found.get(k);
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> near[a].length != near[b].length
+                ? Integer.compare(near[b].length, near[a].length)
+                : ids[a].compareTo(ids[b]));
+
+        final boolean[] taken = new boolean[n];
+        final List<GeofenceRegistry.Spec> out = new ArrayList<>();
+        for (int seed : order) {
+            if (taken[seed]) continue;
+            taken[seed] = true;
+
+            List<Integer> members = new ArrayList<>();
+            members.add(seed);
+            for (int j : near[seed]) if (!taken[j]) { taken[j] = true; members.add(j); }
+
+            if (members.size() == 1) {
+                float r = (float) Math.max(MIN_RADIUS_M, Math.min(MAX_SINGLE_RADIUS_M, nearest[seed] / 2));
+                out.add(new GeofenceRegistry.Spec(ids[seed], lat[seed], lng[seed], r, TRANSITIONS, dwellFor(r)));
+                continue;
+            }
+
+            double cLat = 0, cLng = 0;
+            for (int m : members) { cLat += lat[m]; cLng += lng[m]; }
+            cLat /= members.size();
+            cLng /= members.size();
+            double reach = 0;
+            String[] memberIds = new String[members.size()];
+            for (int k = 0; k < memberIds.length; k++) {
+                int m = members.get(k);
+                memberIds[k] = ids[m];
+                reach = Math.max(reach, GeoHash.distanceMeters(cLat, cLng, lat[m], lng[m]));
+            }
+            float r = (float) (reach + BASE_RADIUS_M);
+            out.add(new GeofenceRegistry.Spec(CLUSTER_PREFIX + ids[seed], cLat, cLng, r,
+                    TRANSITIONS, dwellFor(r), memberIds));
+        }
+        return out;
+    }
+
+    private static int dwellFor(float radiusM) {
+        return Math.max(MIN_DWELL_MS, Math.min(MAX_DWELL_MS, Math.round(radiusM * DWELL_MS_PER_M)));
+    }
+
+    /** Grid cell (offset by dx, dy) containing this point. */
+    private static long cell(double lat, double lng, double cellLat, double cellLng, int dx, int dy) {
+        long y = (long) Math.floor(lat / cellLat) + dy;
+        long x = (long) Math.floor(lng / cellLng) + dx;
+        return (y << 32) ^ (x & 0xffffffffL);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.virtualtourar.geofence;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.provider.Settings;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.location.Geofence;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Record of the fences this app currently has registered with Play Services (request id →
+ * center, radius and parameters), so a re-registration only sends the difference.
+ *
+ * Play Services drops every fence on reboot, so a record written during an earlier boot reads
+ * as empty. Call {@link #clear} when fences are known to be gone for other reasons (location
+ * turned off → GEOFENCE_NOT_AVAILABLE).
+ *
+ * Cluster members are also kept in a separate prefs file, one key per fence, so the receiver
+ * can read one fence's members without parsing the whole record.
+ */
+final class GeofenceRegistry {
+    private static final String PREF = "geofence_registry";
+    private static final String KEY_JSON = "fences_json";
+    private static final String KEY_BOOT = "boot_count";
+    /** Cluster fence id → JSON array of member egg ids. */
+    private static final String PREF_MEMBERS = "geofence_members";
+
+    private GeofenceRegistry() {}
+
+    /** One fence as registered. Equal specs need no IPC. */
+    static final class Spec {
+        final String id;
+        final double lat, lng;
+        final float radius;
+        final int transitions;
+        final int dwellMs;
+        /** Eggs covered by a merged cluster fence; null for a single egg's own fence. */
+        final @Nullable String[] members;
+
+        Spec(@NonNull String id, double lat, double lng, float radius, int transitions, int dwellMs) {
+            this(id, lat, lng, radius, transitions, dwellMs, null);
+        }
+
+        Spec(@NonNull String id, double lat, double lng, float radius, int transitions, int dwellMs,
+             @Nullable String[] members) {
+            this.id = id;
+            this.lat = lat;
+            this.lng = lng;
+            this.radius = radius;
+            this.transitions = transitions;
+            this.dwellMs = dwellMs;
+            this.members = members;
+        }
+
+        Geofence toGeofence() {
+            Geofence.Builder b = new Geofence.Builder()
+                    .setRequestId(id)
+                    .setCircularRegion(lat, lng, radius)
+                    .setTransitionTypes(transitions)
+                    .setExpirationDuration(Geofence.NEVER_EXPIRE);
+            if ((transitions & Geofence.GEOFENCE_TRANSITION_DWELL) != 0) b.setLoiteringDelay(dwellMs);
+            return b.build();
+        }
+
+        @Override public boolean equals(@Nullable Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Spec)) return false;
+            Spec s = (Spec) o;
+            return id.equals(s.id) && lat == s.lat && lng == s.lng && radius == s.radius
+                    && transitions == s.transitions && dwellMs == s.dwellMs
+                    && Arrays.equals(members, s.members);
+        }
+
+        @Override public int hashCode() { return id.hashCode(); }
+    }
+
+    /** What is registered now (empty if unknown or from an earlier boot). */
+    static Map<String, Spec> load(@NonNull Context ctx) {
+        SharedPreferences sp = ctx.getSharedPreferences(PREF, Context.MODE_PRIVATE);
+        if (sp.getInt(KEY_BOOT, -2) != bootCount(ctx)) return Collections.emptyMap();
+
+        Map<String, Spec> out = new LinkedHashMap<>();
+        try {
+            JSONArray arr = new JSONArray(sp.getString(KEY_JSON, "[]"));
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.optJSONObject(i);
+                if (o == null) continue;
+                String id = o.optString("id", null);
+                if (id == null || id.isEmpty()) continue;
+                JSONArray m = o.optJSONArray("m");
+                String[] members = null;
+                if (m != null) {
+                    members = new String[m.length()];
+                    for (int k = 0; k < members.length; k++) members[k] = m.optString(k);
+                }
+                out.put(id, new Spec(id,
+                        o.optDouble("lat", 0d),
+                        o.optDouble("lng", 0d),
+                        (float) o.optDouble("r", 0d),
+                        o.optInt("t", 0),
+                        o.optInt("dwell", 0),
+                        members));
+            }
+        } catch (Throwable ignore) {
+            return Collections.emptyMap(); // unreadable → treat as nothing registered
+        }
+        return out;
+    }
+
+    /** Eggs behind a registered cluster fence (empty if unknown). */
+    static List<String> members(@NonNull Context ctx, @NonNull String fenceId) {
+        String json = ctx.getSharedPreferences(PREF_MEMBERS, Context.MODE_PRIVATE).getString(fenceId, null);
+        if (json == null) return Collections.emptyList();
+        try {
+            JSONArray m = new JSONArray(json);
+            List<String> out = new ArrayList<>(m.length());
+            for (int k = 0; k < m.length(); k++) out.add(m.optString(k));
+            return out;
+        } catch (Throwable ignore) {
+            return Collections.emptyList();
+        }
+    }
+
+    static void save(@NonNull Context ctx, @NonNull Map<String, Spec> fences) {
+        try {
+            JSONArray arr = new JSONArray();
+            for (Spec s : fences.values()) {
+                JSONObject o = new JSONObject();
+                o.put("id", s.id);
+                o.put("lat", s.lat);
+                o.put("lng", s.lng);
+                o.put("r", s.radius);
+                o.put("t", s.transitions);
+                o.put("dwell", s.dwellMs);
+                if (s.members != null) o.put("m", new JSONArray(Arrays.asList(s.members)));
+                arr.put(o);
+            }
+            // Members first: a fence in the record always has its members readable.
+            SharedPreferences.Editor members = ctx.getSharedPreferences(PREF_MEMBERS, Context.MODE_PRIVATE).edit().clear();
+            for (Spec s : fences.values()) {
+                if (s.members != null) members.putString(s.id, new JSONArray(Arrays.asList(s.members)).toString());
+            }
+            members.commit();
+            ctx.getSharedPreferences(PREF, Context.MODE_PRIVATE).edit()
+                    .putString(KEY_JSON, arr.toString())
+                    .putInt(KEY_BOOT, bootCount(ctx))
+                    .commit(); // before the next diff reads it
+        } catch (Throwable ignore) {
+            clear(ctx); // a stale record is worse than none
+        }
+    }
+
+    static void clear(@NonNull Context ctx) {
+        ctx.getSharedPreferences(PREF, Context.MODE_PRIVATE).edit().clear().commit();
+        // Members stay: fences may still fire until the next save rewrites them.
+    }
+
+    private static int bootCount(Context ctx) {
+        return Settings.Global.getInt(ctx.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.virtualtourar.geofence;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.ActivityCompat;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.virtualtourar.data.EggIndexEntry;
+import com.example.virtualtourar.data.EggRepository;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deferred refresh of the geofence pool after boot / app update: fetches the eggs around the
+ * last fix and re-registers. Runs once the device has network and battery isn't low, so it
+ * stays out of the way at boot; the fences from the stored pool are already up by then (see
+ * {@link BootCompletedReceiver}).
+ *
+ * Enqueued as unique work with KEEP, so any number of triggers collapse into one run.
+ */
+public class GeofenceSyncWorker extends Worker {
+    private static final String TAG = "GeofenceSyncWorker";
+    private static final String UNIQUE_NAME = "geofence-boot-sync";
+
+    /** Give up after this many attempts; the app refreshes the pool on its next launch anyway. */
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long FETCH_TIMEOUT_S = 60;
+
+    public GeofenceSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /** Schedule the refresh unless one is already pending or running. */
+    public static void enqueue(@NonNull Context ctx) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(GeofenceSyncWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(30, TimeUnit.SECONDS) // let boot settle
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 1, TimeUnit.MINUTES)
+                .build();
+        WorkManager.getInstance(ctx.getApplicationContext())
+                .enqueueUniqueWork(UNIQUE_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @SuppressLint("MissingPermission") // checked below
+    @NonNull
+    @Override
+    public Result doWork() {
+        final Context ctx = getApplicationContext();
+        if (ActivityCompat.checkSelfPermission(ctx, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            return Result.success(); // nothing we may register
+        }
+
+        try {
+            Location here = Tasks.await(
+                    LocationServices.getFusedLocationProviderClient(ctx).getLastLocation(),
+                    FETCH_TIMEOUT_S, TimeUnit.SECONDS);
+            // Without a fix the only query is the whole catalog; keep the stored pool instead.
+            if (here == null) return Result.success();
+
+            List<EggIndexEntry> eggs = Tasks.await(
+                    new EggRepository().fetchEggsAround(here, EggRepository.NEARBY_CATALOG_RADIUS_M),
+                    FETCH_TIMEOUT_S, TimeUnit.SECONDS);
+            Tasks.await(new GeofenceManager(ctx).registerForEggs(eggs), FETCH_TIMEOUT_S, TimeUnit.SECONDS);
+            return Result.success();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        } catch (Exception e) {
+            Log.w(TAG, "Geofence refresh failed (attempt " + (getRunAttemptCount() + 1) + ")", e);
+            return getRunAttemptCount() + 1 < MAX_ATTEMPTS ? Result.retry() : Result.failure();
+        }
+    }
+}
@@ -2,104 +2,121 @@ package com.example.virtualtourar.geofence;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Tiny cache of geofence metadata (title/lat/lng) used by the BroadcastReceiver
  * and by BootCompletedReceiver to re-register fences after reboot/app-update.
  *
- * Backed by SharedPreferences (JSON). Safe to call from any process.
+ * Versioned binary file, written atomically and read through a read-only memory map, so the
+ * receiver (which usually runs in a cold process) can look up one id with a hash probe instead
+ * of parsing the whole set:
+ *
+ *   header   magic, version, count, slots, updatedAt
+ *   slots    int[slots]: record index + 1, 0 = empty (open addressing, linear probe)
+ *   records  count × {hash, lat, lng, idOff, titleOff, idLen, titleLen}, fixed width
+ *   strings  UTF-8 ids and titles, referenced by offset
+ *
+ * The SharedPreferences JSON written by older builds is migrated on first access.
  */
 public final class NearbyEggStore {
+    private static final String TAG = "NearbyEggStore";
+    private static final String FILE_NAME = "nearby_eggs.bin";
+    private static final int MAGIC = 0x4e454747; // "NEGG"
+    private static final int VERSION = 2; // 1: SharedPreferences JSON
+
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8;
+    private static final int RECORD_BYTES = 4 + 8 + 8 + 4 + 4 + 2 + 2;
+    private static final int MAX_STR_BYTES = 0xffff;
+
+    // Legacy (v1) location.
     private static final String PREF = "nearby_store";
     private static final String KEY_JSON = "anchor_json";
-    private static final String KEY_META = "meta_json";     // version + updatedAt
-
-    private static final int VERSION = 1;
+    private static final String KEY_META = "meta_json";
 
     private NearbyEggStore() {}
 
     /** Persist the full map (overwrites old set). */
-    public static void save(Context ctx, Map<String, EggInfo> map) {
+    public static synchronized void save(Context ctx, Map<String, EggInfo> map) {
         if (ctx == null || map == null) return;
+        AtomicFile file = file(ctx);
+        FileOutputStream fos = null;
         try {
-            JSONArray arr = new JSONArray();
-            for (Map.Entry<String, EggInfo> e : map.entrySet()) {
-                if (e == null || e.getKey() == null || e.getValue() == null) continue;
-                EggInfo info = e.getValue();
-                JSONObject o = new JSONObject();
-                o.put("id", e.getKey());
-                o.put("title", info.title == null ? "" : info.title);
-                o.put("lat", info.lat);
-                o.put("lng", info.lng);
-                arr.put(o);
-            }
+            fos = file.startWrite();
+            fos.write(encode(map).array());
+            file.finishWrite(fos);
+        } catch (Throwable t) {
+            Log.w(TAG, "Store write failed", t);
+            if (fos != null) file.failWrite(fos);
+        }
+    }
 
-            JSONObject meta = new JSONObject();
-            meta.put("version", VERSION);
-            meta.put("updatedAt", System.currentTimeMillis());
-
-            SharedPreferences sp = ctx.getSharedPreferences(PREF, Context.MODE_PRIVATE);
-            sp.edit()
-                    .putString(KEY_JSON, arr.toString())
-                    .putString(KEY_META, meta.toString())
-                    .apply();
-        } catch (Throwable ignore) {
-            // best-effort cache; never crash
+    /** One entry by id without decoding the rest; null if absent. */
+    public static @Nullable EggInfo get(Context ctx, @Nullable String id) {
+        if (ctx == null || id == null) return null;
+        ByteBuffer b = map(ctx);
+        if (b == null) return null;
+        try {
+            int r = find(b, id);
+            return r >= 0 ? info(b, r) : null;
+        } catch (Throwable t) {
+            Log.w(TAG, "Store lookup failed", t);
+            return null;
         }
     }
 
-    /** Load the last saved set (empty map if none). */
+    /** Load the last saved set, in saved order (empty map if none). */
     public static Map<String, EggInfo> load(Context ctx) {
         if (ctx == null) return Collections.emptyMap();
-        SharedPreferences sp = ctx.getSharedPreferences(PREF, Context.MODE_PRIVATE);
-        String s = sp.getString(KEY_JSON, "[]");
+        ByteBuffer b = map(ctx);
+        if (b == null) return Collections.emptyMap();
 
-        Map<String, EggInfo> out = new HashMap<>();
+        Map<String, EggInfo> out = new LinkedHashMap<>();
         try {
-            JSONArray arr = new JSONArray(s);
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject o = arr.optJSONObject(i);
-                if (o == null) continue;
-                String id = o.optString("id", null);
-                if (id == null || id.isEmpty()) continue;
-                out.put(id, new EggInfo(
-                        o.optString("title", ""),
-                        o.optDouble("lat", 0d),
-                        o.optDouble("lng", 0d)
-                ));
+            int count = b.getInt(8);
+            for (int r = 0; r < count; r++) {
+                int p = recordAt(b, r);
+                out.put(str(b, b.getInt(p + 20), b.getShort(p + 28) & 0xffff), info(b, r));
             }
-        } catch (Throwable ignore) { /* empty map fallback */ }
+        } catch (Throwable t) {
+            Log.w(TAG, "Store read failed", t);
+            return Collections.emptyMap();
+        }
         return out;
     }
 
     /** Optional helper: clear the cache. */
-    public static void clear(Context ctx) {
+    public static synchronized void clear(Context ctx) {
         if (ctx == null) return;
-        ctx.getSharedPreferences(PREF, Context.MODE_PRIVATE)
-                .edit()
-                .remove(KEY_JSON)
-                .remove(KEY_META)
-                .apply();
+        file(ctx).delete();
     }
 
     /** Optional: when this cache was last updated (ms since epoch); -1 if unknown. */
     public static long lastUpdatedAt(Context ctx) {
-        if (ctx == null) return -1L;
-        try {
-            String meta = ctx.getSharedPreferences(PREF, Context.MODE_PRIVATE).getString(KEY_META, null);
-            if (meta == null) return -1L;
-            JSONObject m = new JSONObject(meta);
-            return m.optLong("updatedAt", -1L);
-        } catch (Throwable t) {
-            return -1L;
-        }
+        ByteBuffer b = ctx != null ? map(ctx) : null;
+        return b != null ? b.getLong(16) : -1L;
     }
 
     /** POJO stored for each geofence. */
@@ -113,4 +130,181 @@ public final class NearbyEggStore {
             this.lng = lng;
         }
     }
+
+    // -------------------- File --------------------
+
+    private static AtomicFile file(Context ctx) {
+        return new AtomicFile(new File(ctx.getApplicationContext().getFilesDir(), FILE_NAME));
+    }
+
+    /** Read-only map of the current file after a header check; null if none / not ours. */
+    private static @Nullable ByteBuffer map(Context ctx) {
+        AtomicFile file = file(ctx);
+        try (FileInputStream in = file.openRead(); FileChannel ch = in.getChannel()) {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            if (b.capacity() < HEADER_BYTES || b.getInt(0) != MAGIC || b.getInt(4) != VERSION) {
+                Log.w(TAG, "Store format mismatch; ignoring");
+                return null;
+            }
+            int count = b.getInt(8), slots = b.getInt(12);
+            if (count < 0 || slots <= count || Integer.bitCount(slots) != 1
+                    || HEADER_BYTES + 4L * slots + (long) RECORD_BYTES * count > b.capacity()) {
+                Log.w(TAG, "Store truncated; ignoring");
+                return null;
+            }
+            return b;
+        } catch (FileNotFoundException none) {
+            return migrateLegacy(ctx);
+        } catch (Throwable t) {
+            Log.w(TAG, "Store map failed", t);
+            return null;
+        }
+    }
+
+    /** Folds the v1 SharedPreferences JSON into the binary file once. */
+    private static synchronized @Nullable ByteBuffer migrateLegacy(Context ctx) {
+        SharedPreferences sp = ctx.getSharedPreferences(PREF, Context.MODE_PRIVATE);
+        String s = sp.getString(KEY_JSON, null);
+        if (s == null) return null;
+
+        Map<String, EggInfo> legacy = new LinkedHashMap<>();
+        try {
+            JSONArray arr = new JSONArray(s);
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.optJSONObject(i);
+                if (o == null) continue;
+                String id = o.optString("id", null);
+                if (id == null || id.isEmpty()) continue;
+                legacy.put(id, new EggInfo(
+                        o.optString("title", ""),
+                        o.optDouble("lat", 0d),
+                        o.optDouble("lng", 0d)
+                ));
+            }
+        } catch (Throwable ignore) { /* nothing worth keeping */ }
+
+        if (!file(ctx).getBaseFile().exists()) save(ctx, legacy);
+        sp.edit().remove(KEY_JSON).remove(KEY_META).apply();
+        return encode(legacy);
+    }
+
+    // -------------------- Format --------------------
+
+    private static ByteBuffer encode(Map<String, EggInfo> map) {
+        List<String> keys = new ArrayList<>(map.size());
+        List<byte[]> ids = new ArrayList<>(map.size());
+        List<byte[]> titles = new ArrayList<>(map.size());
+        List<EggInfo> infos = new ArrayList<>(map.size());
+        int strBytes = 0;
+        for (Map.Entry<String, EggInfo> e : map.entrySet()) {
+            if (e == null || e.getKey() == null || e.getValue() == null) continue;
+            byte[] id = e.getKey().getBytes(StandardCharsets.UTF_8);
+            if (id.length > MAX_STR_BYTES) continue;
+            byte[] title = utf8Capped(e.getValue().title);
+            keys.add(e.getKey());
+            ids.add(id);
+            titles.add(title);
+            infos.add(e.getValue());
+            strBytes += id.length + title.length;
+        }
+
+        final int count = infos.size();
+        int slots = Integer.highestOneBit(Math.max(8, count * 2 - 1)) << 1; // load ≤ 50%
+        int recordsAt = HEADER_BYTES + 4 * slots;
+        int stringsAt = recordsAt + RECORD_BYTES * count;
+        ByteBuffer b = ByteBuffer.allocate(stringsAt + strBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        b.putInt(0, MAGIC);
+        b.putInt(4, VERSION);
+        b.putInt(8, count);
+        b.putInt(12, slots);
+        b.putLong(16, System.currentTimeMillis());
+
+        int str = stringsAt;
+        for (int r = 0; r < count; r++) {
+            byte[] id = ids.get(r), title = titles.get(r);
+            EggInfo info = infos.get(r);
+            int hash = keys.get(r).hashCode();
+
+            int p = recordsAt + r * RECORD_BYTES;
+            b.putInt(p, hash);
+            b.putDouble(p + 4, info.lat);
+            b.putDouble(p + 12, info.lng);
+            b.putInt(p + 20, str);
+            b.putInt(p + 24, str + id.length);
+            b.putShort(p + 28, (short) id.length);
+            b.putShort(p + 30, (short) title.length);
+            b.position(str);
+            b.put(id);
+            b.put(title);
+            str += id.length + title.length;
+
+            int slot = mix(hash) & (slots - 1);
+            while (b.getInt(HEADER_BYTES + 4 * slot) != 0) slot = (slot + 1) & (slots - 1);
+            b.putInt(HEADER_BYTES + 4 * slot, r + 1);
+        }
+        b.position(0);
+        return b;
+    }
+
+    /** Record index of this id, or -1. */
+    private static int find(ByteBuffer b, String id) {
+        final int slots = b.getInt(12);
+        final int hash = id.hashCode();
+        byte[] want = null;
+        for (int slot = mix(hash) & (slots - 1), probes = 0; probes < slots;
+             slot = (slot + 1) & (slots - 1), probes++) {
+            int r = b.getInt(HEADER_BYTES + 4 * slot) - 1;
+            if (r < 0) return -1;
+            int p = recordAt(b, r);
+            if (b.getInt(p) != hash) continue;
+            if (want == null) want = id.getBytes(StandardCharsets.UTF_8);
+            if (bytesEqual(b, b.getInt(p + 20), b.getShort(p + 28) & 0xffff, want)) return r;
+        }
+        return -1;
+    }
+
+    private static EggInfo info(ByteBuffer b, int r) {
+        int p = recordAt(b, r);
+        return new EggInfo(
+                str(b, b.getInt(p + 24), b.getShort(p + 30) & 0xffff),
+                b.getDouble(p + 4),
+                b.getDouble(p + 12));
+    }
+
+    private static int recordAt(ByteBuffer b, int r) {
+        return HEADER_BYTES + 4 * b.getInt(12) + r * RECORD_BYTES;
+    }
+
+    private static String str(ByteBuffer b, int off, int len) {
+        byte[] out = new byte[len];
+        ByteBuffer d = b.duplicate();
+        d.position(off);
+        d.get(out);
+        return new String(out, StandardCharsets.UTF_8);
+    }
+
+    private static boolean bytesEqual(ByteBuffer b, int off, int len, byte[] want) {
+        if (len != want.length) return false;
+        for (int i = 0; i < len; i++) if (b.get(off + i) != want[i]) return false;
+        return true;
+    }
+
+    /** Title as UTF-8, cut at a character boundary to fit the 16-bit length field. */
+    private static byte[] utf8Capped(@Nullable String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        if (b.length <= MAX_STR_BYTES) return b;
+        int n = MAX_STR_BYTES;
+        while (n > 0 && (b[n] & 0xc0) == 0x80) n--;
+        return Arrays.copyOf(b, n);
+    }
+
+    /** String.hashCode clusters on similar ids; spread it before masking. */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
 }
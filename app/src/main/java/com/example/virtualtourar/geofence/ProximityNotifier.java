@@ -0,0 +1,243 @@
+package com.example.virtualtourar.geofence;
+
+import android.Manifest;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.example.virtualtourar.GeospatialActivity;
+import com.example.virtualtourar.R;
+import com.google.android.gms.location.Geofence;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides which geofence transitions become a notification, and posts them as one.
+ *
+ *  - All eggs of one transition batch share a single notification (a list when several).
+ *  - DWELL is dropped for an egg whose ENTER already alerted.
+ *  - Per-egg cooldown: an egg alerts at most once per {@link #EGG_COOLDOWN_MS}.
+ *  - Global cooldown: at most one alert per {@link #GLOBAL_COOLDOWN_MS}.
+ *
+ * Recent alerts live in a small ring buffer in SharedPreferences (the receiver's process is
+ * usually fresh), as do the counters reported by {@link #stats}.
+ */
+public final class ProximityNotifier {
+    private static final String TAG = "ProximityNotifier";
+
+    private static final String PREF = "proximity_alerts";
+    private static final String KEY_RING = "ring_json";
+    private static final String KEY_POSTED = "posted";
+    private static final String KEY_DWELL = "suppressed_dwell";
+    private static final String KEY_EGG = "suppressed_egg_cooldown";
+    private static final String KEY_GLOBAL = "suppressed_global_cooldown";
+
+    private static final long EGG_COOLDOWN_MS = 30 * 60_000L;
+    private static final long GLOBAL_COOLDOWN_MS = 2 * 60_000L;
+    /** Enough for the egg cooldown at any realistic walking pace; oldest entries drop off. */
+    private static final int RING_SIZE = 64;
+
+    /** One id for all proximity alerts: a new alert replaces the previous one. */
+    private static final int NOTIFICATION_ID = 0x45474701;
+    private static final int MAX_LISTED = 5;
+
+    private ProximityNotifier() {}
+
+    /** How many alerts were posted and how many were held back, and why (since install). */
+    public static final class Stats {
+        public final long posted, suppressedDwell, suppressedEggCooldown, suppressedGlobalCooldown;
+
+        Stats(long posted, long dwell, long egg, long global) {
+            this.posted = posted;
+            this.suppressedDwell = dwell;
+            this.suppressedEggCooldown = egg;
+            this.suppressedGlobalCooldown = global;
+        }
+
+        public long suppressed() { return suppressedDwell + suppressedEggCooldown + suppressedGlobalCooldown; }
+
+        @NonNull @Override public String toString() {
+            return String.format(Locale.US, "posted=%d suppressed=%d (dwell=%d egg=%d global=%d)",
+                    posted, suppressed(), suppressedDwell, suppressedEggCooldown, suppressedGlobalCooldown);
+        }
+    }
+
+    public static Stats stats(@NonNull Context ctx) {
+        SharedPreferences sp = prefs(ctx);
+        return new Stats(sp.getLong(KEY_POSTED, 0), sp.getLong(KEY_DWELL, 0),
+                sp.getLong(KEY_EGG, 0), sp.getLong(KEY_GLOBAL, 0));
+    }
+
+    /** ENTER / DWELL for these eggs (one GeofencingEvent). */
+    static synchronized void onTransition(@NonNull Context ctx, int transition, @NonNull List<String> eggIds) {
+        if (eggIds.isEmpty()) return;
+        final long now = System.currentTimeMillis();
+        final SharedPreferences sp = prefs(ctx);
+        final List<Alert> ring = readRing(sp);
+
+        long lastPosted = 0;
+        for (Alert a : ring) lastPosted = Math.max(lastPosted, a.at);
+
+        int dwell = 0, egg = 0;
+        List<String> fresh = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(eggIds)) {
+            Alert prev = latest(ring, id);
+            if (prev != null && now - prev.at < EGG_COOLDOWN_MS) {
+                if (transition == Geofence.GEOFENCE_TRANSITION_DWELL
+                        && prev.transition == Geofence.GEOFENCE_TRANSITION_ENTER) dwell++;
+                else egg++;
+                continue;
+            }
+            fresh.add(id);
+        }
+
+        int global = 0;
+        if (!fresh.isEmpty() && now - lastPosted < GLOBAL_COOLDOWN_MS) {
+            // Not recorded: these eggs may still alert on a later transition.
+            global = fresh.size();
+            fresh.clear();
+        }
+
+        SharedPreferences.Editor ed = sp.edit();
+        bump(sp, ed, KEY_DWELL, dwell);
+        bump(sp, ed, KEY_EGG, egg);
+        bump(sp, ed, KEY_GLOBAL, global);
+        if (!fresh.isEmpty() && post(ctx, fresh)) {
+            for (String id : fresh) ring.add(new Alert(id, now, transition));
+            while (ring.size() > RING_SIZE) ring.remove(0);
+            ed.putString(KEY_RING, writeRing(ring));
+            bump(sp, ed, KEY_POSTED, 1);
+        }
+        ed.apply();
+
+        if (dwell + egg + global > 0) {
+            Log.d(TAG, "Held back " + (dwell + egg + global) + " of " + eggIds.size()
+                    + " (dwell=" + dwell + " egg=" + egg + " global=" + global + ")");
+        }
+    }
+
+    // -------------------- posting --------------------
+
+    /** False if notifications aren't allowed (nothing counts as alerted then). */
+    private static boolean post(Context ctx, List<String> ids) {
+        // Android 13+ requires POST_NOTIFICATIONS runtime permission.
+        if (Build.VERSION.SDK_INT >= 33
+                && ActivityCompat.checkSelfPermission(ctx, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            return false;
+        }
+        NotificationHelper.ensureChannel(ctx, GeofenceManager.CHANNEL_ID);
+
+        final String first = ids.get(0);
+        List<String> titles = new ArrayList<>(Math.min(ids.size(), MAX_LISTED));
+        for (int i = 0; i < ids.size() && i < MAX_LISTED; i++) titles.add(titleOf(ctx, ids.get(i)));
+
+        // Deep link to AR screen with the (first) eggId.
+        Intent open = new Intent(ctx, GeospatialActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP)
+                .putExtra("openEggId", first);
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                ctx, NOTIFICATION_ID, open, PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        NotificationCompat.Builder nb = new NotificationCompat.Builder(ctx, GeofenceManager.CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_stat_egg)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setAutoCancel(true)
+                .setContentIntent(contentIntent)
+                .setVibrate(new long[]{0, 250, 150, 250});
+        if (ids.size() == 1) {
+            nb.setContentTitle("Egg nearby")
+              .setContentText(titles.get(0) + " is close — tap to view!");
+        } else {
+            NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle();
+            for (String t : titles) inbox.addLine(t);
+            if (ids.size() > MAX_LISTED) inbox.setSummaryText("+" + (ids.size() - MAX_LISTED) + " more");
+            nb.setContentTitle(ids.size() + " eggs nearby")
+              .setContentText(titles.get(0) + " and more — tap to view!")
+              .setNumber(ids.size())
+              .setStyle(inbox);
+        }
+        NotificationManagerCompat.from(ctx).notify(NOTIFICATION_ID, nb.build());
+
+        // Optional haptic nudge.
+        try {
+            Vibrator v = (Vibrator) ctx.getSystemService(Context.VIBRATOR_SERVICE);
+            if (v != null && v.hasVibrator()) {
+                v.vibrate(VibrationEffect.createOneShot(250, VibrationEffect.DEFAULT_AMPLITUDE));
+            }
+        } catch (Throwable ignore) {}
+        return true;
+    }
+
+    /** Title saved by GeofenceManager, or a generic one. */
+    private static String titleOf(Context ctx, String id) {
+        NearbyEggStore.EggInfo info = NearbyEggStore.get(ctx, id);
+        return (info != null && info.title != null && !info.title.isEmpty()) ? info.title : "An egg";
+    }
+
+    // -------------------- ring buffer --------------------
+
+    private static final class Alert {
+        final String id;
+        final long at;
+        final int transition;
+
+        Alert(String id, long at, int transition) {
+            this.id = id;
+            this.at = at;
+            this.transition = transition;
+        }
+    }
+
+    private static @Nullable Alert latest(List<Alert> ring, String id) {
+        for (int i = ring.size() - 1; i >= 0; i--) if (ring.get(i).id.equals(id)) return ring.get(i);
+        return null;
+    }
+
+    private static List<Alert> readRing(SharedPreferences sp) {
+        List<Alert> out = new ArrayList<>();
+        try {
+            JSONArray arr = new JSONArray(sp.getString(KEY_RING, "[]"));
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.optJSONObject(i);
+                if (o == null || !o.has("id")) continue;
+                out.add(new Alert(o.getString("id"), o.optLong("at", 0), o.optInt("t", 0)));
+            }
+        } catch (Throwable ignore) { /* start over */ }
+        return out;
+    }
+
+    private static String writeRing(List<Alert> ring) {
+        JSONArray arr = new JSONArray();
+        try {
+            for (Alert a : ring) arr.put(new JSONObject().put("id", a.id).put("at", a.at).put("t", a.transition));
+        } catch (Throwable ignore) {}
+        return arr.toString();
+    }
+
+    private static void bump(SharedPreferences sp, SharedPreferences.Editor ed, String key, long by) {
+        if (by > 0) ed.putLong(key, sp.getLong(key, 0) + by);
+    }
+
+    private static SharedPreferences prefs(Context ctx) {
+        return ctx.getApplicationContext().getSharedPreferences(PREF, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.virtualtourar.helpers;
+
+import android.app.Activity;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Tracks whether the default network has internet, from {@link
+ * ConnectivityManager#registerDefaultNetworkCallback} instead of polling. {@link #isOnline()} is a
+ * volatile read, so the render loop can check it every frame without a binder call.
+ */
+public final class ConnectivityMonitor {
+  private static final String TAG = "ConnectivityMonitor";
+
+  /** Called on the main thread when the state flips. */
+  public interface Listener {
+    void onConnectivityChanged(boolean online);
+  }
+
+  private final ConnectivityManager connectivityManager;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  @Nullable private Listener listener;
+  private volatile boolean online = true; // optimistic until the first probe
+  private boolean registered;
+
+  private final ConnectivityManager.NetworkCallback callback =
+      new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities caps) {
+          publish(hasInternet(caps));
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+          publish(false);
+        }
+      };
+
+  public ConnectivityMonitor(Context context) {
+    connectivityManager =
+        (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+  }
+
+  public void setListener(@Nullable Listener listener) {
+    this.listener = listener;
+  }
+
+  /** Last known state; free to call from any thread. */
+  public boolean isOnline() {
+    return online;
+  }
+
+  /** Probes once, then follows the default network. Should be called from {@link Activity#onResume()}. */
+  public void onResume() {
+    if (connectivityManager == null || registered) return;
+    try {
+      Network active = connectivityManager.getActiveNetwork();
+      NetworkCapabilities caps =
+          active != null ? connectivityManager.getNetworkCapabilities(active) : null;
+      publish(caps != null && hasInternet(caps));
+      connectivityManager.registerDefaultNetworkCallback(callback, mainHandler);
+      registered = true;
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Network callback registration failed; assuming online", e);
+      publish(true);
+    }
+  }
+
+  /** Stops following the network. Should be called from {@link Activity#onPause()}. */
+  public void onPause() {
+    if (!registered) return;
+    registered = false;
+    try {
+      connectivityManager.unregisterNetworkCallback(callback);
+    } catch (RuntimeException ignore) {
+      // already unregistered
+    }
+  }
+
+  private void publish(boolean nowOnline) {
+    if (online == nowOnline) return;
+    online = nowOnline;
+    Log.d(TAG, nowOnline ? "Online" : "Offline");
+    Listener l = listener;
+    if (l == null) return;
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      l.onConnectivityChanged(nowOnline);
+    } else {
+      mainHandler.post(() -> l.onConnectivityChanged(nowOnline));
+    }
+  }
+
+  private static boolean hasInternet(NetworkCapabilities caps) {
+    return caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+  }
+}
@@ -242,6 +242,9 @@ public class Shader implements Closeable {
       textureUnit = maxTextureUnit++;
     } else {
       UniformTexture uniformTexture = (UniformTexture) uniform;
+      if (uniformTexture.texture == texture) {
+        return this; // unchanged; avoid a per-draw allocation
+      }
       textureUnit = uniformTexture.getTextureUnit();
     }
     uniforms.put(location, new UniformTexture(textureUnit, texture));
@@ -318,7 +321,14 @@ public class Shader implements Closeable {
     if (values.length != 16) {
       throw new IllegalArgumentException("Value array length must be 16 (4x4)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix4f(values.clone()));
+    int location = getUniformLocation(name);
+    Uniform uniform = uniforms.get(location);
+    if (uniform instanceof UniformMatrix4f && ((UniformMatrix4f) uniform).values.length == 16) {
+      // Per-draw matrices: overwrite in place instead of cloning. Uniforms are only read at draw.
+      System.arraycopy(values, 0, ((UniformMatrix4f) uniform).values, 0, 16);
+      return this;
+    }
+    uniforms.put(location, new UniformMatrix4f(values.clone()));
     return this;
   }
 